@@ -0,0 +1,23 @@
+#!/bin/bash
+# Builds the app and the JMH jar, then runs the benchmarks with the GC profiler so both
+# time and allocation per operation are reported. Results land in results/<commit>.json;
+# compare two commits with any JMH JSON viewer or by diffing the score columns.
+#
+#   ./bench.sh                       all benchmarks
+#   ./bench.sh Ndjson                only classes matching a regex
+#   ./bench.sh Streaming -p tokens=64   extra JMH options are passed through
+
+set -e
+cd "$(dirname "$0")"
+
+mvn -B -q -f ../pom.xml install -DskipTests
+mvn -B -q package
+
+commit=$(git rev-parse --short HEAD 2>/dev/null || echo local)
+if ! git diff --quiet HEAD -- ../src 2>/dev/null; then commit="$commit-dirty"; fi
+mkdir -p results
+
+filter=${1:-.}
+shift || true
+
+java -jar target/benchmarks.jar "$filter" -prof gc -rf json -rff "results/$commit.json" "$@"
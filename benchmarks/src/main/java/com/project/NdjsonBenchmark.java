@@ -0,0 +1,104 @@
+package com.project;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Parsing a whole /api/chat stream: NdjsonStreamParser against the BufferedReader + JSONObject
+// path it replaced, on a synthetic stream (ASCII tokens, accents, emoji, escapes, a final stats
+// chunk). Divide by tokens + 1 for per-chunk cost.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NdjsonBenchmark {
+
+    private static final String[] TOKENS = {
+        "The", " quick", " brown", " fox", " jumps", " over", " the", " lazy", " dog", ".",
+        " Ça", " va", " très", " bien", " 😀", " \\\"quoted\\\"", "\\n", " tab\\tstop", " \\u00e9t\\u00e9", " ok"
+    };
+
+    @Param({ "256", "4096" })
+    public int tokens;
+
+    private byte[] stream;
+
+    @Setup
+    public void setup() throws IOException {
+        stream = syntheticChatStream(tokens);
+        if (checksumParser(stream) != checksumJson(stream)) {
+            throw new IllegalStateException("parsers disagree");
+        }
+    }
+
+    @Benchmark
+    public long streamParser() throws IOException {
+        return checksumParser(stream);
+    }
+
+    @Benchmark
+    public long jsonObject() throws IOException {
+        return checksumJson(stream);
+    }
+
+    static long checksumJson(byte[] stream) throws IOException {
+        long sum = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(stream), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                JSONObject o = new JSONObject(line);
+                JSONObject message = o.optJSONObject("message");
+                String content = message != null ? message.optString("content", "") : o.optString("response", "");
+                sum = sum * 31 + content.hashCode();
+                if (o.optBoolean("done", false)) sum += o.optLong("eval_count", 0);
+            }
+        }
+        return sum;
+    }
+
+    static long checksumParser(byte[] stream) throws IOException {
+        long sum = 0;
+        NdjsonStreamParser parser = new NdjsonStreamParser(new ByteArrayInputStream(stream));
+        NdjsonStreamParser.Chunk chunk = new NdjsonStreamParser.Chunk();
+        while (parser.next(chunk)) {
+            sum = sum * 31 + chunk.content.hashCode();
+            if (chunk.done) sum += chunk.evalCount;
+        }
+        return sum;
+    }
+
+    static byte[] syntheticChatStream(int tokens) {
+        StringBuilder sb = new StringBuilder(tokens * 120);
+        for (int i = 0; i < tokens; i++) {
+            sb.append("{\"model\":\"gemma3:1b\",\"created_at\":\"2025-01-01T00:00:00.000000Z\",")
+              .append("\"message\":{\"role\":\"assistant\",\"content\":\"").append(TOKENS[i % TOKENS.length])
+              .append("\"},\"done\":false}\n");
+        }
+        sb.append("{\"model\":\"gemma3:1b\",\"created_at\":\"2025-01-01T00:00:00.000000Z\",")
+          .append("\"message\":{\"role\":\"assistant\",\"content\":\"\"},\"done_reason\":\"stop\",\"done\":true,")
+          .append("\"total_duration\":5000000000,\"load_duration\":1000000,\"prompt_eval_count\":26,")
+          .append("\"prompt_eval_duration\":130000000,\"eval_count\":").append(tokens)
+          .append(",\"eval_duration\":4800000000}\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
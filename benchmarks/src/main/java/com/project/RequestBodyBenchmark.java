@@ -0,0 +1,139 @@
+package com.project;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Building and fully draining request bodies, as the HttpClient would when sending them:
+// text chat turns with growing history, and vision turns with the image streamed as Base64
+// (against the old whole-String Base64 + JSON approach as a baseline).
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBodyBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class History {
+        @Param({ "2", "40" })
+        public int turns;
+
+        Conversation conversation;
+
+        @Setup
+        public void setup() {
+            conversation = conversation(turns);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Image {
+        @Param({ "64", "4096" })
+        public int imageKb;
+
+        Conversation conversation;
+        ImagePayload payload;
+        private Path file;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            conversation = conversation(4);
+            byte[] bytes = new byte[imageKb * 1024];
+            new Random(42).nextBytes(bytes);
+            file = Files.createTempFile("xavigpt-bench", ".jpg");
+            Files.write(file, bytes);
+            payload = ImagePayload.mapped(file);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            payload = null;
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Benchmark
+    public long textChatBody(History h) {
+        JSONObject body = envelope("gemma3:1b", h.conversation.toMessages(null));
+        return drain(BodyPublishers.ofString(body.toString()));
+    }
+
+    @Benchmark
+    public long imageChatBodyStreamed(Image img) {
+        String placeholder = ImageRequestBody.newPlaceholder();
+        JSONObject body = envelope("llava-phi3", img.conversation.toMessages(placeholder));
+        return drain(ImageRequestBody.of(body, img.payload, placeholder));
+    }
+
+    @Benchmark
+    public long imageChatBodyWholeString(Image img) {
+        ByteBuffer raw = img.payload.bytes();
+        byte[] bytes = new byte[raw.remaining()];
+        raw.get(bytes);
+        String base64 = Base64.getEncoder().encodeToString(bytes);
+        JSONObject body = envelope("llava-phi3", img.conversation.toMessages(base64));
+        return drain(BodyPublishers.ofString(body.toString()));
+    }
+
+    // Same shape as Controller.executeChatRequest / executeImageRequest
+    private static JSONObject envelope(String model, JSONArray messages) {
+        return new JSONObject()
+            .put("model", model)
+            .put("messages", messages)
+            .put("stream", true)
+            .put("keep_alive", "10m")
+            .put("options", new JSONObject().put("num_ctx", 2048).put("num_predict", 256));
+    }
+
+    static Conversation conversation(int turns) {
+        Conversation c = new Conversation();
+        for (int i = 0; i < turns; i++) {
+            if (i % 2 == 0) c.addUser("Question " + i + ": how does the KV cache interact with a \"rolling\" context window?");
+            else c.addAssistant(("Answer " + i + " — the prefix stays cached while it is unchanged. ").repeat(12));
+        }
+        return c;
+    }
+
+    // Pulls every byte out of the publisher; returns the byte count
+    static long drain(HttpRequest.BodyPublisher publisher) {
+        CompletableFuture<Long> done = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<ByteBuffer>() {
+            long total;
+
+            @Override public void onSubscribe(Flow.Subscription s) { s.request(Long.MAX_VALUE); }
+            @Override public void onNext(ByteBuffer item) { total += item.remaining(); }
+            @Override public void onError(Throwable t) { done.completeExceptionally(t); }
+            @Override public void onComplete() { done.complete(total); }
+        });
+        long n = done.join();
+        if (publisher.contentLength() >= 0 && n != publisher.contentLength()) {
+            throw new IllegalStateException("body length " + n + " != declared " + publisher.contentLength());
+        }
+        return n;
+    }
+}
@@ -0,0 +1,81 @@
+package com.project;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Top-k scan of the search index's memory-mapped vector file (no embedding call, no SQLite
+// lookup): random unit vectors at nomic-embed-text's 768 dimensions.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SemanticSearchBenchmark {
+
+    @Param({ "10000", "100000" })
+    public int messages;
+
+    @Param({ "768" })
+    public int dim;
+
+    private Path dir;
+    private SemanticIndex index;
+    private float[] query;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("xavigpt-index");
+        index = new SemanticIndex(dir.resolve("bench.vectors"), "bench");
+        SplittableRandom random = new SplittableRandom(42);
+        int batch = 1024;
+        for (int done = 0; done < messages; done += batch) {
+            int n = Math.min(batch, messages - done);
+            List<ChatStore.IndexedMessage> rows = new ArrayList<>(n);
+            float[][] vectors = new float[n][];
+            for (int i = 0; i < n; i++) {
+                rows.add(new ChatStore.IndexedMessage(done + i + 1, (done + i) / 20, "user", ""));
+                vectors[i] = randomUnit(random);
+            }
+            index.append(rows, vectors);
+        }
+        query = randomUnit(random);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        index.close();
+        Files.deleteIfExists(dir.resolve("bench.vectors"));
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public long[][] top20() {
+        return index.topK(query, 20);
+    }
+
+    private float[] randomUnit(SplittableRandom random) {
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) v[i] = (float) random.nextGaussian();
+        return VectorFile.normalize(v);
+    }
+}
@@ -0,0 +1,126 @@
+package com.project;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// One chat turn end to end over loopback: build the body, send it on the shared HttpClient,
+// parse the NDJSON reply and accumulate the text.
+//  - replayed:   a canned stream written in 4 KB pieces; the server costs next to nothing,
+//                so the score is the client path.
+//  - fakeOllama: FakeOllamaServer with pacing and delays off; one flushed chunk per token,
+//                which is how Ollama frames it.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamingBenchmark {
+
+    @Param({ "256" })
+    public int tokens;
+
+    private HttpServer replay;
+    private ExecutorService replayPool;
+    private FakeOllamaServer fake;
+    private HttpClient httpClient;
+    private URI replayUri;
+    private URI fakeUri;
+    private String body;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] stream = NdjsonBenchmark.syntheticChatStream(tokens);
+        replayPool = Executors.newFixedThreadPool(2);
+        replay = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16);
+        replay.setExecutor(replayPool);
+        replay.createContext("/api/chat", ex -> {
+            try (ex; InputStream in = ex.getRequestBody()) {
+                in.readAllBytes();
+                ex.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+                ex.sendResponseHeaders(200, 0);
+                OutputStream out = ex.getResponseBody();
+                for (int off = 0; off < stream.length; off += 4096) {
+                    out.write(stream, off, Math.min(4096, stream.length - off));
+                    out.flush();
+                }
+            }
+        });
+        replay.start();
+        replayUri = URI.create("http://127.0.0.1:" + replay.getAddress().getPort() + "/api/chat");
+
+        fake = new FakeOllamaServer(new FakeOllamaServer.Config(0, 0, 0, 0, 0, 0, 0, tokens, null)).start();
+        fakeUri = URI.create(fake.baseUrl()).resolve("/api/chat");
+
+        httpClient = HttpClient.newHttpClient();
+        body = new JSONObject()
+            .put("model", "gemma3:1b")
+            .put("messages", RequestBodyBenchmark.conversation(8).toMessages(null))
+            .put("stream", true)
+            .put("keep_alive", "10m")
+            .toString();
+    }
+
+    @TearDown
+    public void tearDown() {
+        replay.stop(0);
+        replayPool.shutdownNow();
+        fake.close();
+    }
+
+    @Benchmark
+    public int replayed() throws Exception {
+        return turn(replayUri);
+    }
+
+    @Benchmark
+    public int fakeOllama() throws Exception {
+        return turn(fakeUri);
+    }
+
+    private int turn(URI uri) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(uri)
+            .header("Content-Type", "application/json")
+            .POST(BodyPublishers.ofString(body))
+            .build();
+        HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        StringBuilder text = new StringBuilder();
+        try (InputStream in = response.body()) {
+            NdjsonStreamParser parser = new NdjsonStreamParser(in);
+            NdjsonStreamParser.Chunk chunk = new NdjsonStreamParser.Chunk();
+            while (parser.next(chunk)) {
+                if (chunk.error != null) throw new IOException(chunk.error);
+                text.append(chunk.content);
+                if (chunk.done) break;
+            }
+        }
+        return text.length();
+    }
+}
@@ -0,0 +1,83 @@
+package com.project;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Growing the assistant bubble: a ChatMessage with a ChatCell-style length listener that reads
+// only the new text run. perToken appends every token (the pre-renderer behaviour); perFrame
+// coalesces through a locked buffer the way StreamRenderer does, draining every `tokensPerFrame`.
+// StreamRenderer itself needs the FX toolkit, so its buffering is mirrored here.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranscriptBenchmark {
+
+    private static final String[] WORDS = {
+        "The", " quick", " brown", " fox", " jumps", " over", " the", " lazy", " dog", ".",
+        " Ça", " va", " très", " bien", " 😀", "\n", " ok"
+    };
+
+    @Param({ "1024" })
+    public int tokens;
+
+    @Param({ "16" })
+    public int tokensPerFrame;
+
+    private String[] stream;
+
+    @Setup
+    public void setup() {
+        stream = new String[tokens];
+        for (int i = 0; i < tokens; i++) stream[i] = WORDS[i % WORDS.length];
+    }
+
+    @Benchmark
+    public int perToken(Blackhole bh) {
+        ChatMessage message = bubble(bh);
+        for (String token : stream) message.append(token);
+        return message.getLength();
+    }
+
+    @Benchmark
+    public int perFrame(Blackhole bh) {
+        ChatMessage message = bubble(bh);
+        Object lock = new Object();
+        StringBuilder pending = new StringBuilder();
+        for (int i = 0; i < stream.length; i++) {
+            synchronized (lock) {
+                pending.append(stream[i]);
+            }
+            if ((i + 1) % tokensPerFrame == 0 || i == stream.length - 1) {
+                String text;
+                synchronized (lock) {
+                    text = pending.toString();
+                    pending.setLength(0);
+                }
+                message.append(text);
+            }
+        }
+        return message.getLength();
+    }
+
+    // Listener mirrors ChatCell: render only what was added since the last change
+    private static ChatMessage bubble(Blackhole bh) {
+        ChatMessage message = new ChatMessage(ChatMessage.Role.ASSISTANT, "");
+        message.lengthProperty().addListener((obs, oldLen, newLen) -> bh.consume(message.getText(oldLen.intValue())));
+        return message;
+    }
+}
@@ -36,12 +36,13 @@ $env:MAVEN_OPTS = "--add-opens java.base/java.lang=ALL-UNNAMED --add-opens java.
 
 # Check for the first argument and set it as the main class
 $mainClass = $args[0]
+$programArgs = $args[1..($args.Length)] -join ' '
 
 Write-Output "Setting MAVEN_OPTS to: $MAVEN_OPTS"
 Write-Output "Main Class: $mainClass"
 
 # Split the execArg into an array
-$execArgs = @("-PrunMain", "-Dexec.mainClass=$mainClass")
+$execArgs = @("-PrunMain", "-Dexec.mainClass=$mainClass", "-Dexec.args=$programArgs")
 
 Write-Output "Exec args: $($execArgs -join ' ')"
 
@@ -27,8 +27,9 @@ fi
 
 # Resta de l'script
 
-# Check for the first argument and set it as the main class
+# Check for the first argument and set it as the main class; the rest go to the program
 mainClass=$1
+shift
 
 echo "Setting MAVEN_OPTS to: $MAVEN_OPTS"
 echo "Main Class: $mainClass"
@@ -38,4 +39,4 @@ execArg="-PrunMain -Dexec.mainClass=$mainClass"
 echo "Exec args: $execArg"
 
 # Execute mvn command
-mvn clean test-compile exec:java $execArg
+mvn clean test-compile exec:java $execArg "-Dexec.args=$*"
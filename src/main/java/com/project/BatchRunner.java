@@ -0,0 +1,401 @@
+package com.project;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.json.JSONObject;
+
+// Headless evaluation runs: streams prompts from a JSONL file through Ollama on virtual threads,
+// at most `concurrency` requests in flight over one shared HttpClient (spread over every configured
+// host by EndpointPool, and never more than xavigpt.scheduler.per_backend on one host), and writes
+// each result as soon as it finishes (JSONL, or SQLite when the output ends in .db). Only in-flight
+// prompts and a bounded result queue are held in memory, and latencies go into fixed-size
+// histograms, so memory doesn't grow with the input.
+//
+// Input lines: {"id": "q1", "prompt": "...", "model": "optional", "image": "optional/path.jpg",
+//               "options": {optional Ollama options}}
+// Run: ./run.sh com.project.BatchRunner prompts.jsonl out=results.jsonl concurrency=4
+public class BatchRunner {
+
+    private static final int QUEUE = 1024;
+    private static final int MAX_BATCH = 256;
+
+    record Result(long line, String id, String model, String outcome, String response, String error,
+                  RequestMetrics metrics) {}
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final EndpointPool pool = EndpointPool.fromSettings(httpClient);
+    private RequestScheduler scheduler;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final GenerationTuner tuner = new GenerationTuner(metrics, pool);
+    private final BlockingQueue<Result> results = new ArrayBlockingQueue<>(QUEUE);
+
+    private final Histogram ttft = new Histogram();
+    private final Histogram total = new Histogram();
+    private long ok, failed, evalTokens;
+    // Writer thread; read after it is joined
+    private long lost;
+    private Exception writeError;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("usage: BatchRunner <prompts.jsonl> [out=results.jsonl|results.db] [concurrency=4]");
+            System.exit(2);
+        }
+        Path input = Path.of(args[0]);
+        String out = "results.jsonl";
+        int concurrency = Settings.getInt("xavigpt.batch.concurrency", 4);
+        for (int i = 1; i < args.length; i++) {
+            String a = args[i];
+            if (a.startsWith("out=")) out = a.substring(4);
+            else if (a.startsWith("concurrency=")) concurrency = Integer.parseInt(a.substring(12));
+            else throw new IllegalArgumentException("unknown argument: " + a);
+        }
+        BatchRunner runner = new BatchRunner();
+        try {
+            runner.run(input, Path.of(out), Math.max(1, concurrency));
+        } finally {
+            runner.pool.close();
+        }
+    }
+
+    public void run(Path input, Path output, int concurrency) throws Exception {
+        long start = System.nanoTime();
+        long submitted = 0;
+        Semaphore slots = new Semaphore(concurrency);
+        // The batch is the only client in this process, so its prompts needn't yield to anything;
+        // the scheduler only spreads them within the per-host cap
+        scheduler = new RequestScheduler(pool, concurrency, Settings.schedulerPerBackend());
+
+        // Input first: nothing is started if it can't be read
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             ResultSink sink = output.toString().endsWith(".db") ? new SqliteSink(output) : new JsonlSink(output)) {
+            Thread writer = Thread.ofPlatform().name("batch-writer").start(() -> writeLoop(sink));
+
+            try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+                String line;
+                long lineNo = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineNo++;
+                    if (line.isBlank()) continue;
+                    slots.acquire();   // back-pressure: the file is read only as fast as results complete
+                    long n = lineNo;
+                    String text = line;
+                    workers.execute(() -> {
+                        try {
+                            put(runOne(n, text));
+                        } finally {
+                            slots.release();
+                        }
+                    });
+                    submitted++;
+                }
+            } finally {
+                // Executor close has waited for the in-flight prompts. The writer always gets its
+                // end marker, also when reading failed or was interrupted, or it would never exit.
+                boolean interrupted = Thread.interrupted();
+                put(new Result(-1, null, null, null, null, null, null));
+                writer.join();
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+        }
+        report(submitted, System.nanoTime() - start, concurrency, output);
+        if (lost > 0) throw new IOException(lost + " results could not be written to " + output, writeError);
+    }
+
+    // --- One prompt ---
+
+    private Result runOne(long line, String json) {
+        String id = null;
+        String model = Controller.TEXT_MODEL;
+        long started = System.nanoTime();
+        try {
+            JSONObject in = new JSONObject(json);
+            id = in.has("id") ? String.valueOf(in.get("id")) : Long.toString(line);
+            String image = in.optString("image", "");
+            model = in.optString("model", image.isEmpty() ? Controller.TEXT_MODEL : Controller.VISION_MODEL);
+
+            Conversation conversation = new Conversation();
+            conversation.addUser(in.getString("prompt"));
+            GenerationTuner.Tuning tuning = tuner.tune(model);
+            String placeholder = image.isEmpty() ? null : ImageRequestBody.newPlaceholder();
+            JSONObject body = new JSONObject()
+                .put("model", model)
+                .put("messages", conversation.toMessages(placeholder))
+                .put("stream", true)
+                .put("keep_alive", tuning.keepAliveParam());
+            // Same picks as the chat unless the line brings its own (pin xavigpt.tune.* for
+            // runs that must be comparable: num_predict follows the measured speed)
+            JSONObject options = in.optJSONObject("options");
+            body.put("options", options != null ? options : tuning.toOptions());
+
+            HttpRequest.BodyPublisher publisher = image.isEmpty()
+                ? BodyPublishers.ofString(body.toString())
+                : ImageRequestBody.of(body, ImagePayload.fromFile(Path.of(image), Settings.imageMaxEdge()), placeholder);
+            Function<URI, HttpRequest> request = base -> HttpRequest.newBuilder()
+                .uri(base.resolve("/api/chat"))
+                .header("Content-Type", "application/json")
+                .POST(publisher)
+                .build();
+
+            StringBuilder text = new StringBuilder();
+            long ttftMs = -1;
+            RequestMetrics done = null;
+            NdjsonStreamParser.Chunk chunk = new NdjsonStreamParser.Chunk();
+            try (RequestScheduler.Permit permit = scheduler.acquire(model, RequestScheduler.Priority.INTERACTIVE, this).get();
+                 EndpointPool.Stream stream = pool.stream(model, request, permit.endpoint())) {
+                // Read to the end of the body even after the done chunk: a response read to EOF
+                // hands its connection back to the client's pool for the next line
+                while (stream.next(chunk)) {
+                    if (chunk.error != null) return failure(line, id, model, chunk.error, started);
+                    if (ttftMs < 0 && !chunk.content.isEmpty()) ttftMs = (System.nanoTime() - started) / 1_000_000;
+                    text.append(chunk.content);
+                    if (chunk.done) done = RequestMetrics.of(model, "ok", ttftMs, (System.nanoTime() - started) / 1_000_000, chunk);
+                }
+            }
+            if (done == null) return failure(line, id, model, "stream ended before done", started);
+            return new Result(line, id, model, "ok", text.toString(), null, done);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failure(line, id, model, "interrupted", started);
+        } catch (Exception e) {
+            return failure(line, id, model, String.valueOf(e.getMessage()), started);
+        }
+    }
+
+    private static Result failure(long line, String id, String model, String error, long started) {
+        long totalMs = (System.nanoTime() - started) / 1_000_000;
+        return new Result(line, id, model, "error", null, error, RequestMetrics.of(model, "error", -1, totalMs, null));
+    }
+
+    private void put(Result r) {
+        try {
+            results.put(r);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --- Writer ---
+
+    private void writeLoop(ResultSink sink) {
+        List<Result> batch = new ArrayList<>(MAX_BATCH);
+        long written = 0;
+        long lastProgress = System.nanoTime();
+        while (true) {
+            try {
+                batch.add(results.take());
+                results.drainTo(batch, MAX_BATCH - 1);
+            } catch (InterruptedException e) {
+                return;
+            }
+            boolean end = batch.get(batch.size() - 1).line() < 0;
+            if (end) batch.remove(batch.size() - 1);
+            for (Result r : batch) account(r);
+            if (writeError != null) {
+                lost += batch.size();   // the sink is broken: keep draining so prompts don't block
+            } else {
+                try {
+                    for (Result r : batch) sink.write(r);
+                    sink.flush();
+                    written += batch.size();
+                } catch (Exception e) {
+                    writeError = e;
+                    lost += batch.size();
+                    System.out.println("Writing results failed, the rest of the run is not saved: " + e);
+                }
+            }
+            batch.clear();
+            if (System.nanoTime() - lastProgress > TimeUnit.SECONDS.toNanos(5)) {
+                lastProgress = System.nanoTime();
+                System.out.printf("%d done (%d ok, %d failed, %d not written)%n", written + lost, ok, failed, lost);
+            }
+            if (end) return;
+        }
+    }
+
+    // Writer thread only
+    private void account(Result r) {
+        metrics.record(r.metrics());
+        if ("ok".equals(r.outcome())) {
+            ok++;
+            ttft.add(r.metrics().ttftMs());
+            total.add(r.metrics().totalMs());
+            if (r.metrics().evalTokens() > 0) evalTokens += r.metrics().evalTokens();
+        } else {
+            failed++;
+        }
+    }
+
+    private void report(long submitted, long elapsedNanos, int concurrency, Path output) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%n%d prompts in %.1f s at concurrency %d -> %s%n", submitted, seconds, concurrency, output);
+        System.out.printf("  %d ok, %d failed, %.2f requests/s, %.1f generated tok/s overall%n",
+            ok, failed, ok / seconds, evalTokens / seconds);
+        System.out.printf("  TTFT  p50 %d ms, p90 %d ms, p99 %d ms, max %d ms%n",
+            ttft.percentile(0.50), ttft.percentile(0.90), ttft.percentile(0.99), ttft.max());
+        System.out.printf("  total p50 %d ms, p90 %d ms, p99 %d ms, max %d ms%n",
+            total.percentile(0.50), total.percentile(0.90), total.percentile(0.99), total.max());
+        System.out.println(metrics.summary());
+        System.out.println(scheduler.stats());
+        System.out.println(pool.stats());
+    }
+
+    // --- Sinks ---
+
+    interface ResultSink extends Closeable {
+        void write(Result r) throws Exception;
+        void flush() throws Exception;
+    }
+
+    static final class JsonlSink implements ResultSink {
+        private final BufferedWriter out;
+
+        JsonlSink(Path path) throws IOException {
+            out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void write(Result r) throws IOException {
+            RequestMetrics m = r.metrics();
+            JSONObject o = new JSONObject()
+                .put("line", r.line())
+                .put("id", r.id())
+                .put("model", r.model())
+                .put("outcome", r.outcome())
+                .put("ttft_ms", m.ttftMs())
+                .put("total_ms", m.totalMs())
+                .put("load_ms", m.loadMs())
+                .put("prompt_tokens", m.promptTokens())
+                .put("eval_tokens", m.evalTokens())
+                .put("tokens_per_s", Math.round(m.tokensPerSecond() * 10) / 10.0);
+            if (r.response() != null) o.put("response", r.response());
+            if (r.error() != null) o.put("error", r.error());
+            out.write(o.toString());
+            out.newLine();
+        }
+
+        @Override
+        public void flush() throws IOException { out.flush(); }
+
+        @Override
+        public void close() throws IOException { out.close(); }
+    }
+
+    // One transaction per drained batch, same as ChatStore's writer
+    static final class SqliteSink implements ResultSink {
+        private final Connection conn;
+        private final PreparedStatement insert;
+
+        SqliteSink(Path path) throws SQLException {
+            conn = DriverManager.getConnection("jdbc:sqlite:" + path);
+            try (Statement st = conn.createStatement()) {
+                st.execute("PRAGMA journal_mode=WAL");
+                st.execute("PRAGMA synchronous=NORMAL");
+                st.execute("CREATE TABLE IF NOT EXISTS batch_results (" +
+                    "line INTEGER, prompt_id TEXT, model TEXT, outcome TEXT, response TEXT, error TEXT, " +
+                    "ttft_ms INTEGER, total_ms INTEGER, load_ms INTEGER, prompt_tokens INTEGER, " +
+                    "eval_tokens INTEGER, tokens_per_s REAL, finished_at INTEGER)");
+            }
+            conn.setAutoCommit(false);
+            insert = conn.prepareStatement("INSERT INTO batch_results VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        }
+
+        @Override
+        public void write(Result r) throws SQLException {
+            RequestMetrics m = r.metrics();
+            insert.setLong(1, r.line());
+            insert.setString(2, r.id());
+            insert.setString(3, r.model());
+            insert.setString(4, r.outcome());
+            insert.setString(5, r.response());
+            insert.setString(6, r.error());
+            insert.setLong(7, m.ttftMs());
+            insert.setLong(8, m.totalMs());
+            insert.setLong(9, m.loadMs());
+            insert.setLong(10, m.promptTokens());
+            insert.setLong(11, m.evalTokens());
+            insert.setDouble(12, m.tokensPerSecond());
+            insert.setLong(13, System.currentTimeMillis());
+            insert.executeUpdate();
+        }
+
+        @Override
+        public void flush() throws SQLException { conn.commit(); }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                insert.close();
+                conn.close();
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    // Log-linear latency histogram (about 3% resolution) over a fixed array, so percentiles over
+    // millions of requests cost the same memory as over ten. Not thread-safe: the writer owns it.
+    static final class Histogram {
+        private static final int SUB = 64;
+        private final long[] counts = new long[SUB + 58 * 32];
+        private long n;
+        private long max = -1;
+
+        void add(long ms) {
+            if (ms < 0) return;
+            counts[index(ms)]++;
+            n++;
+            max = Math.max(max, ms);
+        }
+
+        long percentile(double q) {
+            if (n == 0) return -1;
+            long rank = Math.max(1, (long) Math.ceil(q * n));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(max, upperBound(i));
+            }
+            return max;
+        }
+
+        long max() { return max; }
+
+        private static int index(long v) {
+            if (v < SUB) return (int) v;
+            int shift = (63 - Long.numberOfLeadingZeros(v)) - 5;
+            return SUB + (shift - 1) * 32 + (int) ((v >>> shift) - 32);
+        }
+
+        private static long upperBound(int i) {
+            if (i < SUB) return i;
+            int shift = (i - SUB) / 32 + 1;
+            long sub = (i - SUB) % 32 + 32;
+            return ((sub + 1) << shift) - 1;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.project;
+
+import javafx.beans.value.ChangeListener;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.HBox;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+
+// Recycled row of the transcript: one bubble node reused for whatever message scrolls into view.
+public class ChatCell extends ListCell<ChatMessage> {
+
+    private static final String USER_STYLE =
+        "-fx-background-color: #DCF8C6;" +   // verde claro estilo WhatsApp
+        "-fx-padding: 10;" +
+        "-fx-background-radius: 10;" +
+        "-fx-font-size: 14px;";
+
+    private static final String ASSISTANT_STYLE =
+        "-fx-background-color: #FFFFFF;" +   // blanco estilo ChatGPT
+        "-fx-padding: 10;" +
+        "-fx-background-radius: 10;" +
+        "-fx-font-size: 14px;" +
+        "-fx-border-color: #E0E0E0;" +
+        "-fx-border-radius: 10;";
+
+    private static final String SYSTEM_STYLE =
+        "-fx-background-color: #EEEEEE;" +
+        "-fx-padding: 8;" +
+        "-fx-background-radius: 8;" +
+        "-fx-font-size: 12px;";
+
+    private final TextFlow bubble = new TextFlow();
+    private final HBox container = new HBox(bubble);
+    private int rendered = 0;
+
+    // Streaming bubble: append only what arrived since the last frame
+    private final ChangeListener<Number> growth = (obs, oldLen, newLen) -> appendFrom(rendered);
+
+    public ChatCell(ListView<ChatMessage> list) {
+        container.setPadding(new Insets(5, 5, 5, 5));
+        bubble.maxWidthProperty().bind(list.widthProperty().subtract(50));
+        setPrefWidth(0);   // wrap instead of scrolling horizontally
+        setMouseTransparent(true);
+        setStyle("-fx-background-color: transparent; -fx-padding: 0;");
+    }
+
+    @Override
+    protected void updateItem(ChatMessage item, boolean empty) {
+        ChatMessage previous = getItem();
+        if (previous != null) previous.lengthProperty().removeListener(growth);
+
+        super.updateItem(item, empty);
+
+        bubble.getChildren().clear();
+        rendered = 0;
+        if (empty || item == null) {
+            setGraphic(null);
+            return;
+        }
+
+        switch (item.getRole()) {
+            case USER -> { bubble.setStyle(USER_STYLE); container.setAlignment(Pos.CENTER_RIGHT); }
+            case ASSISTANT -> { bubble.setStyle(ASSISTANT_STYLE); container.setAlignment(Pos.CENTER_LEFT); }
+            default -> { bubble.setStyle(SYSTEM_STYLE); container.setAlignment(Pos.CENTER); }
+        }
+        appendFrom(0);
+        item.lengthProperty().addListener(growth);
+        setGraphic(container);
+    }
+
+    private void appendFrom(int from) {
+        ChatMessage item = getItem();
+        if (item == null || item.getLength() <= from) return;
+        Text run = new Text(item.getText(from));
+        if (item.getRole() == ChatMessage.Role.SYSTEM) run.setStyle("-fx-fill: #555555;");
+        bubble.getChildren().add(run);
+        rendered = item.getLength();
+    }
+}
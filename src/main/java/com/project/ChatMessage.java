@@ -0,0 +1,64 @@
+package com.project;
+
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// Plain transcript entry; cells render it, they don't own it.
+// Mutations happen on the FX thread (the streaming bubble grows through append).
+// Once Transcript spills it, the body lives in a TranscriptLog and is decoded on every read.
+public class ChatMessage {
+
+    public enum Role { USER, ASSISTANT, SYSTEM }
+
+    private final Role role;
+    private StringBuilder text;                 // null while spilled
+    private final ReadOnlyIntegerWrapper length = new ReadOnlyIntegerWrapper();
+    private TranscriptLog log;
+    private long logOffset;
+    private int logBytes;
+
+    public ChatMessage(Role role, String text) {
+        this.role = role;
+        this.text = new StringBuilder(text);
+        this.length.set(text.length());
+    }
+
+    public Role getRole() { return role; }
+
+    public String getText() { return text != null ? text.toString() : readBack(); }
+
+    public String getText(int from) { return text != null ? text.substring(from) : readBack().substring(from); }
+
+    public void append(String more) {
+        if (text == null) text = new StringBuilder(readBack());
+        text.append(more);
+        length.set(text.length());
+    }
+
+    public int getLength() { return length.get(); }
+
+    public ReadOnlyIntegerProperty lengthProperty() { return length.getReadOnlyProperty(); }
+
+    boolean isSpilled() { return text == null; }
+
+    // Moves the body to log; length and role stay here
+    void spill(TranscriptLog log) throws IOException {
+        if (text == null) return;
+        byte[] utf8 = text.toString().getBytes(StandardCharsets.UTF_8);
+        logOffset = log.append(utf8);
+        logBytes = utf8.length;
+        this.log = log;
+        text = null;
+    }
+
+    private String readBack() {
+        try {
+            return new String(log.read(logOffset, logBytes), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "(message no longer available)";
+        }
+    }
+}
@@ -0,0 +1,793 @@
+package com.project;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.scene.control.ListView;
+import javafx.scene.control.Tab;
+import javafx.scene.control.skin.VirtualFlow;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+// One conversation tab: its transcript, history paging and request state. Several sessions can
+// stream at once; services (endpoints, scheduler, store, cache, metrics) are shared through Host.
+// Public methods are called on the FX thread.
+public class ChatSession {
+
+    static final String TEXT_MODEL   = Controller.TEXT_MODEL;
+    static final String VISION_MODEL = Controller.VISION_MODEL;
+    private static final int PAGE_SIZE = 50;
+    private static final int TITLE_LENGTH = 24;
+    private static final int IMAGE_TOKENS = 576;        // llava-phi3: 24x24 CLIP patches at 336 px
+    private static final int SUMMARY_TOKENS = 200;      // num_predict for the rolling summary
+
+    // What a session needs from the window that owns it
+    interface Host {
+        EndpointPool pool();
+        RequestScheduler scheduler();
+        ChatStore store();          // null when history is disabled
+        ResponseCache cache();      // null unless enabled
+        MetricsRegistry metrics();
+        GenerationTuner tuner();
+        DocumentIndex docs();       // null when document retrieval is off
+        ImageCache images();
+        ExecutorService executor();
+        void sessionChanged(ChatSession session);   // running state or stats changed
+    }
+
+    private final Host host;
+    private final Tab tab = new Tab();
+    private final ListView<ChatMessage> chatList = new ListView<>();
+    private final ObservableList<ChatMessage> messages = FXCollections.observableArrayList();
+    private final Transcript transcript = new Transcript(messages, Settings.transcriptMemoryChars());
+    private final Conversation conversation = new Conversation();
+    private String title;
+    private boolean titled = false;    // named after the first prompt
+
+    // History
+    private volatile long conversationId = -1;    // -1 until the first message of a new chat
+    private long oldestLoadedId = Long.MAX_VALUE;
+    private boolean hasOlder = false;
+    private boolean loadingOlder = false;
+
+    // Request state; one request per session at a time. Null when idle; set and cleared on the
+    // FX thread, read by reader threads to tell whether what they carry is still wanted.
+    private volatile Generation current;
+
+    // Rolling summary of turns that left the context window
+    private final List<Conversation.Turn> unsummarized = new ArrayList<>();
+    private CompletableFuture<HttpResponse<String>> summarizing;
+
+    // Image
+    private ImagePayload lastImage = null;
+    private CompletableFuture<Boolean> visionWarmup;
+    private boolean useImage = false;
+
+    public ChatSession(Host host, String title) {
+        this.host = host;
+        this.title = title;
+        tab.setText(title);
+        tab.setContent(chatList);
+        tab.setUserData(this);
+
+        chatList.setItems(messages);
+        chatList.setCellFactory(list -> new ChatCell(list));
+        chatList.setFocusTraversable(false);
+        chatList.setStyle("-fx-background-color: transparent; -fx-padding: 10;");
+        messages.addListener((ListChangeListener<ChatMessage>) c -> {
+            // Only appends follow the bottom; pages of history are inserted at the top
+            while (c.next()) {
+                if (c.wasAdded() && c.getTo() == messages.size()) scrollToBottom();
+            }
+        });
+        chatList.skinProperty().addListener((obs, oldSkin, newSkin) -> {
+            if (chatList.lookup(".virtual-flow") instanceof VirtualFlow<?> flow) {
+                flow.positionProperty().addListener((o, oldPos, pos) -> {
+                    if (pos.doubleValue() <= 0) loadOlderPage();
+                });
+            }
+        });
+    }
+
+    public Tab tab() { return tab; }
+
+    public boolean isRunning() { return current != null; }
+
+    public String transcriptStats() { return transcript.stats(); }
+
+    // --- History ---
+
+    // Shows the newest page of a stored conversation (if the user hasn't started typing yet)
+    public void resume(long id) {
+        ChatStore store = host.store();
+        if (store == null || id < 0) return;
+        store.loadPage(id, Long.MAX_VALUE, PAGE_SIZE).thenAccept(page -> Platform.runLater(() -> {
+            if (conversationId >= 0 || !messages.isEmpty()) return;   // user already started a new chat
+            conversationId = id;
+            for (ChatStore.StoredMessage m : page) {
+                if (m.role().equals("user")) conversation.addUser(m.content());
+                else conversation.addAssistant(m.content());
+            }
+            showPage(page);
+            if (!page.isEmpty()) setTitle(page.get(0).content());
+        })).exceptionally(e -> { e.printStackTrace(); return null; });
+    }
+
+    private void loadOlderPage() {
+        ChatStore store = host.store();
+        if (store == null || !hasOlder || loadingOlder) return;
+        loadingOlder = true;
+        long id = conversationId;
+        store.loadPage(id, oldestLoadedId, PAGE_SIZE).whenComplete((page, err) -> Platform.runLater(() -> {
+            loadingOlder = false;
+            if (err != null) { err.printStackTrace(); return; }
+            if (id != conversationId) return;
+            showPage(page);
+            // Keep the row that was on top where it was
+            if (chatList.lookup(".virtual-flow") instanceof VirtualFlow<?> flow) flow.scrollToTop(page.size());
+        }));
+    }
+
+    // FX thread: prepends a page (oldest first) to the transcript
+    private void showPage(List<ChatStore.StoredMessage> page) {
+        hasOlder = page.size() == PAGE_SIZE;
+        if (page.isEmpty()) return;
+        oldestLoadedId = page.get(0).id();
+        List<ChatMessage> rows = new ArrayList<>(page.size());
+        for (ChatStore.StoredMessage m : page) {
+            ChatMessage.Role role = m.role().equals("user") ? ChatMessage.Role.USER : ChatMessage.Role.ASSISTANT;
+            rows.add(new ChatMessage(role, m.content()));
+        }
+        messages.addAll(0, rows);
+        if (rows.size() == messages.size()) scrollToBottom();
+    }
+
+    private void persistUserMessage(String prompt) {
+        ChatStore store = host.store();
+        if (store == null) return;
+        if (conversationId < 0) {
+            String t = prompt.length() > 60 ? prompt.substring(0, 60) : prompt;
+            conversationId = store.newConversation(t);
+        }
+        store.addMessage(conversationId, "user", prompt);
+    }
+
+    // --- Transcript ---
+
+    private void addUserMessage(String msg) {
+        Platform.runLater(() -> messages.add(new ChatMessage(ChatMessage.Role.USER, msg)));
+    }
+
+    void addSystemMessage(String msg) {
+        Platform.runLater(() -> messages.add(new ChatMessage(ChatMessage.Role.SYSTEM, msg)));
+    }
+
+    // Any thread: runs r on the FX thread unless gen was cancelled or replaced by then
+    private void post(Generation gen, Runnable r) {
+        Platform.runLater(() -> {
+            if (gen == current) r.run();
+        });
+    }
+
+    private void addSystemMessage(Generation gen, String msg) {
+        post(gen, () -> messages.add(new ChatMessage(ChatMessage.Role.SYSTEM, msg)));
+    }
+
+    // Keeps the newest row in view; position 1.0 is the end of the virtual flow
+    private void scrollToBottom() {
+        if (messages.isEmpty()) return;
+        if (chatList.lookup(".virtual-flow") instanceof VirtualFlow<?> flow) {
+            flow.setPosition(1.0);
+        } else {
+            chatList.scrollTo(messages.size() - 1);
+        }
+    }
+
+    private void setTitle(String text) {
+        String t = text.strip().replace('\n', ' ');
+        titled = true;
+        title = t.length() > TITLE_LENGTH ? t.substring(0, TITLE_LENGTH) + "…" : t;
+        updateTab();
+    }
+
+    // A dot marks tabs that are generating
+    private void updateTab() {
+        tab.setText(current != null ? "● " + title : title);
+    }
+
+    // --- Actions ---
+
+    public void send(String prompt) {
+        addUserMessage(prompt);
+        if (!titled) setTitle(prompt);
+
+        // Snapshot the history on the FX thread; the request is built off-thread
+        conversation.addUser(prompt);
+        persistUserMessage(prompt);
+
+        // Si el usuario activó el modo imagen
+        if (useImage && lastImage != null) {
+            Generation gen = begin(VISION_MODEL, true);
+            ImagePayload image = lastImage;
+            GenerationTuner.Tuning tuning = tune(gen);
+            fitContext(budget(tuning, IMAGE_TOKENS));
+            String placeholder = ImageRequestBody.newPlaceholder();
+            JSONArray history = conversation.toMessages(placeholder);
+            gen.cacheKey = cacheKey(VISION_MODEL, conversation.toMessages(null).toString(), image.digest(), tuning);
+            addSystemMessage("Analyzing image + text...");
+            lookupCache(gen.cacheKey).thenAccept(hit -> {
+                if (gen.isCancelled()) return;
+                if (hit != null) { replayCached(gen, hit); return; }
+                runWithSlot(gen, "Error loading vision model.",
+                    permit -> executeImageRequest(gen, history, placeholder, image, tuning, permit));
+            });
+            return;
+        }
+
+        // Modo texto normal: relevant chunks of ingested files go in front of the prompt
+        Generation gen = begin(TEXT_MODEL, true);
+        addSystemMessage("Thinking...");
+        DocumentIndex docs = host.docs();
+        CompletableFuture<List<DocumentIndex.Chunk>> context = docs == null
+            ? CompletableFuture.completedFuture(List.of())
+            : docs.retrieve(prompt, Settings.docsTopK(), Settings.docsMinScore());
+        context.whenComplete((chunks, err) -> post(gen, () -> {
+            if (err != null) System.out.println("Document retrieval skipped: " + err);
+            sendText(gen, err == null ? chunks : List.of());
+        }));
+    }
+
+    // FX thread. The excerpts count against the history's budget (at most half of it) and are
+    // part of the cache key.
+    private void sendText(Generation gen, List<DocumentIndex.Chunk> chunks) {
+        GenerationTuner.Tuning tuning = tune(gen);
+        int budget = budget(tuning, 0);
+        List<DocumentIndex.Chunk> used = new ArrayList<>();
+        int contextTokens = 0;
+        for (DocumentIndex.Chunk c : chunks) {
+            int tokens = Conversation.estimateTokens(c.text());
+            if (contextTokens + tokens > budget / 2) break;
+            used.add(c);
+            contextTokens += tokens;
+        }
+        fitContext(budget - contextTokens);
+        JSONArray history = withDocuments(conversation.toMessages(null), used);
+        gen.cacheKey = cacheKey(TEXT_MODEL, history.toString(), null, tuning);
+        if (!used.isEmpty()) {
+            addSystemMessage("Using: " + String.join(", ", used.stream().map(DocumentIndex.Chunk::label).toList()));
+        }
+        lookupCache(gen.cacheKey).thenAccept(hit -> {
+            if (gen.isCancelled()) return;
+            if (hit != null) { replayCached(gen, hit); return; }
+            runWithSlot(gen, "Error loading model.",
+                permit -> executeChatRequest(gen, history, tuning, permit));
+        });
+    }
+
+    // Excerpts as a system message right before the newest user turn, so the turns before it
+    // keep the same prefix as the previous request
+    private static JSONArray withDocuments(JSONArray history, List<DocumentIndex.Chunk> chunks) {
+        if (chunks.isEmpty()) return history;
+        StringBuilder sb = new StringBuilder("Excerpts from the user's files that may help answer the next message. "
+            + "Cite the file name when you use one.\n");
+        for (DocumentIndex.Chunk c : chunks) {
+            sb.append("\n--- ").append(c.label()).append(" ---\n").append(c.text().strip()).append('\n');
+        }
+        JSONArray out = new JSONArray();
+        for (int i = 0; i < history.length() - 1; i++) out.put(history.get(i));
+        out.put(new JSONObject().put("role", "system").put("content", sb.toString()));
+        out.put(history.get(history.length() - 1));
+        return out;
+    }
+
+    public void complete() {
+        addSystemMessage("");
+        Generation gen = begin(TEXT_MODEL, false);
+
+        String prompt = "Tell me a haiku.";
+        GenerationTuner.Tuning tuning = tune(gen);
+        gen.cacheKey = cacheKey(TEXT_MODEL, prompt, null, tuning);
+        lookupCache(gen.cacheKey).thenAccept(hit -> {
+            if (gen.isCancelled()) return;
+            if (hit != null) {
+                post(gen, () -> { addSystemMessage(hit.text()); setIdle(gen); });
+                return;
+            }
+            runWithSlot(gen, "Error loading model.", permit -> executeTextRequest(gen, prompt, tuning, permit));
+        });
+    }
+
+    public void attachImage(File file) {
+        // Load the vision model while the image is being prepared, not when the user hits send
+        startVisionWarmup();
+
+        // Downscale/re-encode (or map) off the FX thread; a file attached before comes from the cache
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return host.images().load(file.toPath(), Settings.imageMaxEdge());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }).whenComplete((image, err) -> Platform.runLater(() -> {
+            if (err != null) {
+                err.printStackTrace();
+                addSystemMessage("Error reading image.");
+                return;
+            }
+            imageReady(image, "Image loaded");
+        }));
+    }
+
+    // A thumbnail picked from the strip; no disk read or encoding unless it was spilled
+    public void attachCached(String digest) {
+        startVisionWarmup();
+        host.images().get(digest).whenComplete((image, err) -> Platform.runLater(() -> {
+            if (err != null || image == null) {
+                addSystemMessage("That image is no longer cached.");
+                return;
+            }
+            imageReady(image, "Cached image selected");
+        }));
+    }
+
+    private void imageReady(ImagePayload image, String what) {
+        lastImage = image;
+        addSystemMessage(image.width() > 0
+            ? String.format("%s (%dx%d, %d KB to upload). Press 'Use Img' to enable it.", what, image.width(), image.height(), image.size() / 1024)
+            : what + ". Press 'Use Img' to enable it.");
+    }
+
+    public void toggleImageUsage() {
+        if (lastImage == null) {
+            addSystemMessage("No image loaded.");
+            return;
+        }
+
+        useImage = !useImage;
+
+        if (useImage) {
+            startVisionWarmup();
+            addSystemMessage("Image mode ON. Your next message will use the image.");
+        } else {
+            cancelVisionWarmup();
+            addSystemMessage("Image mode OFF.");
+        }
+    }
+
+    // Warm-ups are background work: they wait behind interactive turns for a slot
+    private void startVisionWarmup() {
+        if (!Settings.visionPrewarm()) return;
+        if (visionWarmup != null && !visionWarmup.isDone()) return;
+        visionWarmup = host.scheduler().submit(VISION_MODEL, RequestScheduler.Priority.BACKGROUND, this,
+            permit -> permit.endpoint().residency().prewarm(VISION_MODEL));
+        visionWarmup.whenComplete((warmed, err) -> {
+            if (Boolean.FALSE.equals(warmed)) System.out.println("Vision warm-up skipped: not enough free memory beside the loaded model");
+        });
+    }
+
+    private void cancelVisionWarmup() {
+        if (visionWarmup != null) visionWarmup.cancel(false);
+        visionWarmup = null;
+    }
+
+    // Settles the turn here and now: what is on screen stays as the reply, tokens still queued or
+    // in flight are dropped, and the tab is idle before this returns. The reader finds out on
+    // its own thread and only gives back the slot.
+    public void cancel() {
+        Generation gen = current;
+        if (gen == null || !gen.cancel()) return;
+        if (gen.userTurn) {
+            ChatMessage reply = gen.reply();
+            if (reply != null && reply.getLength() > 0) conversation.addAssistant(reply.getText());
+            else conversation.dropPendingUser();
+        }
+        addSystemMessage("Request cancelled.");
+        setIdle(gen);
+        host.metrics().recordCancelIdle(gen.sinceCancelMs());
+    }
+
+    // The old chat stays in the database; the next message opens a new one. A reply still
+    // streaming is cancelled first, so it can't write into the new chat.
+    public void clear() {
+        cancel();
+        messages.clear();
+        transcript.reset();
+        conversation.clear();
+        conversationId = -1;
+        oldestLoadedId = Long.MAX_VALUE;
+        hasOlder = false;
+        unsummarized.clear();
+        if (summarizing != null) summarizing.cancel(false);
+        summarizing = null;
+        titled = false;
+        title = "New chat";
+        updateTab();
+    }
+
+    // Tab closed or window closing
+    public void close() {
+        cancel();
+        cancelVisionWarmup();
+        if (summarizing != null) summarizing.cancel(false);
+        transcript.close();
+    }
+
+    // --- Context window ---
+
+    // Options for the next request to model; its keep_alive also sets when the model is
+    // expected to leave memory
+    private GenerationTuner.Tuning tune(Generation gen) {
+        GenerationTuner.Tuning tuning = host.tuner().tune(gen.model);
+        gen.keepAlive = tuning.keepAlive();
+        return tuning;
+    }
+
+    // num_ctx has to hold the history, the reply and (for vision) the image
+    private static int budget(GenerationTuner.Tuning tuning, int extraTokens) {
+        int room = tuning.contextTokens() - tuning.numPredict() - extraTokens;
+        return Math.max(0, Math.min(Settings.contextBudget(), room));
+    }
+
+    // FX thread: trims the history to budget before a request, so prefill stays bounded
+    // however long the chat runs. Turns that fall out are queued for the rolling summary.
+    private void fitContext(int budget) {
+        List<Conversation.Turn> evicted = conversation.fit(budget);
+        if (evicted.isEmpty() || !Settings.contextSummary()) return;
+        unsummarized.addAll(evicted);
+        if (summarizing == null) summarize();
+    }
+
+    // FX thread. One summary request per tab at a time, as background work behind the chat
+    // turns; turns evicted meanwhile go into the next one. Until it lands they are just dropped.
+    private void summarize() {
+        String prompt = summaryPrompt(conversation.getSummary(), unsummarized, Settings.contextBudget());
+        unsummarized.clear();
+        long epoch = conversation.epoch();
+
+        JSONObject body = new JSONObject()
+            .put("model", TEXT_MODEL)
+            .put("prompt", prompt)
+            .put("stream", false)
+            .put("keep_alive", host.tuner().tune(TEXT_MODEL).keepAliveParam())
+            // Same load-time options as the chat turns, or the model would be reloaded
+            .put("options", host.tuner().loadOptions(TEXT_MODEL).put("num_predict", SUMMARY_TOKENS));
+        Function<URI, HttpRequest> request = base -> HttpRequest.newBuilder()
+            .uri(base.resolve("/api/generate"))
+            .header("Content-Type", "application/json")
+            .POST(BodyPublishers.ofString(body.toString()))
+            .build();
+
+        CompletableFuture<HttpResponse<String>> job = host.scheduler().submit(TEXT_MODEL,
+            RequestScheduler.Priority.BACKGROUND, this, permit -> host.pool().send(TEXT_MODEL, request));
+        summarizing = job;
+        job.whenComplete((response, err) -> Platform.runLater(() -> {
+            if (summarizing == job) summarizing = null;
+            if (job.isCancelled()) return;
+            if (err != null) {
+                System.out.println("Summary failed: " + err);
+            } else if (response.statusCode() == 200) {
+                conversation.setSummary(new JSONObject(response.body()).optString("response", null), epoch);
+            }
+            if (!unsummarized.isEmpty() && summarizing == null) summarize();
+        }));
+    }
+
+    // Previous summary plus the newest evicted turns that fit in budget tokens
+    // (a resumed chat can evict hundreds of turns at once)
+    static String summaryPrompt(String previous, List<Conversation.Turn> turns, int budget) {
+        int from = turns.size();
+        int tokens = 0;
+        while (from > 0 && tokens + turns.get(from - 1).tokens() <= budget) {
+            tokens += turns.get(--from).tokens();
+        }
+        StringBuilder sb = new StringBuilder(
+            "Update the summary of a conversation between a user and an assistant. Keep names, facts, "
+            + "decisions and open questions; drop small talk. Answer with the summary only, in under 150 words.\n\n");
+        if (previous != null) sb.append("Current summary:\n").append(previous).append("\n\n");
+        sb.append("New messages:\n");
+        for (Conversation.Turn t : turns.subList(from, turns.size())) {
+            sb.append(t.role()).append(": ").append(t.content()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // --- Request helpers ---
+
+    // Waits for a scheduler slot, makes sure the model is loaded on the slot's host, then runs
+    // the request. The request owns the permit from then on and must close it.
+    private void runWithSlot(Generation gen, String loadError, Consumer<RequestScheduler.Permit> execute) {
+        CompletableFuture<RequestScheduler.Permit> slot =
+            host.scheduler().acquire(gen.model, RequestScheduler.Priority.INTERACTIVE, this);
+        gen.pending(slot);   // cancelled while queued: just leave the queue
+        if (!slot.isDone()) addSystemMessage(gen, "Waiting for a free " + gen.model + " slot ...");
+
+        slot.thenAccept(permit -> {
+            if (gen.isCancelled()) { permit.close(); return; }
+            permit.endpoint().residency().ensureLoaded(gen.model, () -> addSystemMessage(gen, "Loading model ..."))
+                .whenComplete((v, err) -> {
+                    if (gen.isCancelled()) { permit.close(); return; }
+                    if (err != null) {
+                        permit.close();
+                        addSystemMessage(gen, loadError);
+                        post(gen, () -> {
+                            if (gen.userTurn) conversation.dropPendingUser();
+                            setIdle(gen);
+                        });
+                        return;
+                    }
+                    execute.accept(permit);
+                });
+        });
+    }
+
+    // Text-only, not streamed
+    private void executeTextRequest(Generation gen, String prompt, GenerationTuner.Tuning tuning, RequestScheduler.Permit permit) {
+        JSONObject body = new JSONObject()
+            .put("model", gen.model)
+            .put("prompt", prompt)
+            .put("stream", false)
+            .put("keep_alive", tuning.keepAliveParam())
+            .put("options", tuning.toOptions());
+
+        Function<URI, HttpRequest> request = base -> HttpRequest.newBuilder()
+            .uri(base.resolve("/api/generate"))
+            .header("Content-Type", "application/json")
+            .POST(BodyPublishers.ofString(body.toString()))
+            .build();
+
+        addSystemMessage(gen, "Wait complete ...");
+
+        CompletableFuture<HttpResponse<String>> call = host.pool().send(gen.model, request);
+        gen.pending(call);
+        call.whenComplete((r, e) -> permit.close())
+            .thenApply(response -> {
+                String responseText = safeExtractTextResponse(response.body());
+                String key = gen.cacheKey;
+                ResponseCache cache = host.cache();
+                if (cache != null && key != null && response.statusCode() == 200) {
+                    cache.put(key, gen.model, responseText, gen.elapsedMs());
+                }
+                post(gen, () -> { addSystemMessage(responseText); setIdle(gen); });
+                return response;
+            })
+            .exceptionally(e -> {
+                if (!gen.isCancelled()) e.printStackTrace();
+                post(gen, () -> setIdle(gen));
+                return null;
+            });
+    }
+
+    // Conversation turn (streamed) against /api/chat. Load-time options (num_ctx, num_thread)
+    // must stay the same from turn to turn for a given model, otherwise Ollama reloads it and the
+    // cached prefix is lost; GenerationTuner keeps them fixed.
+    private void executeChatRequest(Generation gen, JSONArray history, GenerationTuner.Tuning tuning, RequestScheduler.Permit permit) {
+        JSONObject body = new JSONObject()
+            .put("model", gen.model)
+            .put("messages", history)
+            .put("stream", true)
+            .put("keep_alive", tuning.keepAliveParam())
+            .put("options", tuning.toOptions());
+        String json = body.toString();
+
+        Function<URI, HttpRequest> request = base -> HttpRequest.newBuilder()
+            .uri(base.resolve("/api/chat"))
+            .header("Content-Type", "application/json")
+            .POST(BodyPublishers.ofString(json))
+            .build();
+
+        gen.task(host.executor().submit(() -> handleStreamResponse(gen, request, permit)));
+    }
+
+    // Image + prompt (streamed) using vision model; the image rides on the last user turn
+    // and is Base64-encoded straight into the request body
+    private void executeImageRequest(Generation gen, JSONArray history, String placeholder, ImagePayload image,
+                                     GenerationTuner.Tuning tuning, RequestScheduler.Permit permit) {
+        addSystemMessage(gen, "Analyzing picture ...");
+
+        JSONObject body = new JSONObject()
+            .put("model", gen.model)
+            .put("messages", history)
+            .put("stream", true)
+            .put("keep_alive", tuning.keepAliveParam())
+            .put("options", tuning.toOptions());
+
+        // A fresh publisher per attempt: a failover re-sends the image to the next host
+        Function<URI, HttpRequest> request = base -> HttpRequest.newBuilder()
+            .uri(base.resolve("/api/chat"))
+            .header("Content-Type", "application/json")
+            .POST(ImageRequestBody.of(body, image, placeholder))
+            .build();
+
+        gen.task(host.executor().submit(() -> handleStreamResponse(gen, request, permit)));
+    }
+
+    // Stream reader for /api/chat (message.content) and /api/generate (response) chunks.
+    // Parses the raw bytes; no per-line String or JSONObject. Once gen is cancelled nothing it
+    // reads reaches the transcript: cancel() has settled the turn already, so this thread only
+    // gives back the connection and the slot.
+    private void handleStreamResponse(Generation gen, Function<URI, HttpRequest> request, RequestScheduler.Permit permit) {
+        StreamRenderer renderer = null;
+        ChatMessage assistant = new ChatMessage(ChatMessage.Role.ASSISTANT, "");
+        boolean sawDone = false;
+        boolean failed = false;
+        long ttftMs = -1;
+        RequestMetrics serverStats = null;
+        EndpointPool.Stream stream = null;
+        ChatStore store = host.store();
+        // Chunks are also queued to the store's batched writer, never written inline
+        long storedId = -1;
+        try {
+            // Starts on the host the slot was reserved on; fails over until one answers
+            // (or dies) before the first token
+            stream = host.pool().stream(gen.model, request, permit.endpoint());
+            gen.stream(stream);   // closed at once if Cancel was pressed while connecting
+
+            NdjsonStreamParser.Chunk chunk = new NdjsonStreamParser.Chunk();
+            renderer = newAssistantRenderer(gen, assistant);
+            gen.reply(assistant, renderer);
+
+            while (stream.next(chunk)) {
+                if (gen.isCancelled()) break;
+                if (chunk.error != null) {
+                    addSystemMessage(gen, "Error: " + chunk.error);
+                    failed = true;
+                    break;
+                }
+                if (chunk.done) {
+                    sawDone = true;
+                    // The final chunk carries the server-side timings; the chunk object is reused
+                    serverStats = RequestMetrics.of(gen.model, "ok", ttftMs, -1, chunk);
+                }
+                String text = chunk.content;
+                if (text.isEmpty()) continue;
+
+                if (ttftMs < 0) ttftMs = gen.elapsedMs();
+                if (storedId < 0 && store != null && conversationId >= 0) {
+                    storedId = store.addMessage(conversationId, "assistant", "");
+                }
+                if (storedId >= 0) store.appendChunk(storedId, text);
+                renderer.push(text);
+            }
+
+        } catch (Exception e) {
+            if (!gen.isCancelled()) {
+                failed = true;
+                e.printStackTrace();
+                addSystemMessage(gen, "Error during streaming.");
+            }
+        } finally {
+            if (stream != null) stream.close();
+            permit.close();
+            if (gen.isCancelled()) host.metrics().recordCancelRelease(gen.sinceCancelMs());
+            String outcome = gen.isCancelled() ? "cancelled" : failed || !sawDone ? "error" : "ok";
+            // A row left unfinished would hold up the search indexer (see ChatStore.messagesAfter)
+            if (storedId >= 0) store.finishMessage(storedId, gen.model, ttftMs, gen.elapsedMs(), outcome);
+            RequestMetrics m = serverStats == null
+                ? new RequestMetrics(gen.model, outcome, ttftMs, gen.elapsedMs(), -1, -1, -1, -1, -1)
+                : new RequestMetrics(gen.model, outcome, ttftMs, gen.elapsedMs(), serverStats.loadMs(),
+                    serverStats.promptTokens(), serverStats.promptEvalMs(), serverStats.evalTokens(), serverStats.evalMs());
+            host.metrics().record(m);
+            Platform.runLater(() -> host.sessionChanged(this));
+
+            if (!gen.isCancelled()) {
+                if (renderer == null) {
+                    post(gen, () -> { conversation.dropPendingUser(); setIdle(gen); });
+                } else {
+                    boolean complete = sawDone;
+                    if (sawDone && stream.endpoint() != null) stream.endpoint().residency().touched(gen.model, gen.keepAlive);
+                    renderer.finish(() -> {
+                        if (gen == current) finishAssistantTurn(gen, assistant, complete);
+                    });
+                }
+            }
+        }
+    }
+
+    // Tokens are coalesced and appended to the message model once per frame;
+    // the visible cell appends just the new text run.
+    private StreamRenderer newAssistantRenderer(Generation gen, ChatMessage assistant) {
+        return new StreamRenderer(text -> {
+            if (gen != current) return;
+            if (assistant.getLength() == 0) {
+                // Primer chunk → crear burbuja de IA
+                messages.add(assistant);
+            }
+            assistant.append(text);
+        }, this::scrollToBottom);
+    }
+
+    // FX thread: whatever reached the screen becomes the assistant turn
+    private void finishAssistantTurn(Generation gen, ChatMessage assistant, boolean complete) {
+        if (assistant.getLength() > 0) {
+            conversation.addAssistant(assistant.getText());
+            String key = gen.cacheKey;
+            ResponseCache cache = host.cache();
+            if (complete && cache != null && key != null) {
+                cache.put(key, gen.model, assistant.getText(), gen.elapsedMs());
+            }
+        } else {
+            conversation.dropPendingUser();
+        }
+        setIdle(gen);
+    }
+
+    // --- Response cache ---
+
+    // What the user asked plus num_ctx, which decides what the model can see. num_predict follows
+    // the measured speed and num_thread the host; keyed on, they would keep making new keys.
+    private String cacheKey(String model, String prompt, String imageDigest, GenerationTuner.Tuning tuning) {
+        if (host.cache() == null) return null;
+        return ResponseCache.key(model, prompt, imageDigest, "num_ctx=" + tuning.contextTokens());
+    }
+
+    private CompletableFuture<ResponseCache.Entry> lookupCache(String key) {
+        ResponseCache cache = host.cache();
+        if (cache == null || key == null) return CompletableFuture.completedFuture(null);
+        return CompletableFuture.supplyAsync(() -> cache.get(key), host.executor());
+    }
+
+    // A hit goes through the same renderer/persistence path as a streamed reply
+    private void replayCached(Generation gen, ResponseCache.Entry hit) {
+        ChatMessage assistant = new ChatMessage(ChatMessage.Role.ASSISTANT, "");
+        StreamRenderer renderer = newAssistantRenderer(gen, assistant);
+        gen.reply(assistant, renderer);
+        long elapsedMs = gen.elapsedMs();
+        ChatStore store = host.store();
+        if (store != null && conversationId >= 0) {
+            long id = store.addMessage(conversationId, "assistant", hit.text());
+            store.finishMessage(id, gen.model, elapsedMs, elapsedMs, "cached");
+        }
+        host.metrics().record(new RequestMetrics(gen.model, "cached", elapsedMs, elapsedMs, -1, -1, -1, -1, -1));
+        renderer.push(hit.text());
+        renderer.finish(() -> {
+            if (gen != current) return;
+            addSystemMessage(String.format("Answered from cache (%.1f s of generation saved).", hit.generationMillis() / 1000.0));
+            finishAssistantTurn(gen, assistant, false);
+        });
+    }
+
+    // --- Small utils ---
+
+    private String safeExtractTextResponse(String bodyStr) {
+        // Extract "response" or fallback to error/message if present
+        try {
+            JSONObject o = new JSONObject(bodyStr);
+            String r = o.optString("response", null);
+            if (r != null && !r.isBlank()) return r;
+            if (o.has("message")) return o.optString("message");
+            if (o.has("error"))   return "Error: " + o.optString("error");
+        } catch (Exception ignore) {}
+        return bodyStr != null && !bodyStr.isBlank() ? bodyStr : "(empty)";
+    }
+
+    // FX thread: gen becomes the session's request
+    private Generation begin(String model, boolean userTurn) {
+        Generation gen = new Generation(model, userTurn);
+        current = gen;
+        updateTab();
+        host.sessionChanged(this);
+        return gen;
+    }
+
+    // FX thread; a no-op for a generation that is no longer current
+    private void setIdle(Generation gen) {
+        if (gen != current) return;
+        current = null;
+        updateTab();
+        host.sessionChanged(this);
+    }
+}
@@ -0,0 +1,316 @@
+package com.project;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Conversations and messages in data/xavigpt.db (WAL mode).
+// Writes are queued and applied in batches by one writer thread, so callers never block on disk.
+// Ids are handed out up front so a message can receive chunks before its row is written.
+public class ChatStore implements AutoCloseable {
+
+    public record StoredMessage(long id, String role, String content) {}
+
+    public record IndexedMessage(long id, long conversationId, String role, String content) {}
+
+    private static final int MAX_BATCH = 512;
+
+    private sealed interface Op permits NewConversation, NewMessage, Append, Finish {}
+    private record NewConversation(long id, String title, long at) implements Op {}
+    private record NewMessage(long id, long conversationId, String role, String content, long at) implements Op {}
+    private record Append(long messageId, String text) implements Op {}
+    private record Finish(long messageId, String model, long ttftMs, long totalMs, String outcome) implements Op {}
+
+    private static final Op POISON = new Append(-1, "");
+
+    private final Connection writeConn;
+    private final Connection readConn;
+    private final AtomicLong conversationIds;
+    private final AtomicLong messageIds;
+    private final BlockingQueue<Op> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final ExecutorService reader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "chat-store-reader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ChatStore(String dbPath) throws SQLException {
+        File parent = new File(dbPath).getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
+        String url = "jdbc:sqlite:" + dbPath;
+
+        writeConn = DriverManager.getConnection(url);
+        try (Statement st = writeConn.createStatement()) {
+            st.execute("PRAGMA journal_mode=WAL");
+            st.execute("PRAGMA synchronous=NORMAL");   // WAL + NORMAL: durable on checkpoint, no fsync per commit
+            st.execute("CREATE TABLE IF NOT EXISTS conversations (" +
+                "id INTEGER PRIMARY KEY, title TEXT, created_at INTEGER, updated_at INTEGER)");
+            st.execute("CREATE TABLE IF NOT EXISTS messages (" +
+                "id INTEGER PRIMARY KEY, conversation_id INTEGER NOT NULL, role TEXT NOT NULL, " +
+                "content TEXT NOT NULL, model TEXT, created_at INTEGER, ttft_ms INTEGER, total_ms INTEGER)");
+            st.execute("CREATE INDEX IF NOT EXISTS messages_by_conversation ON messages(conversation_id, id)");
+            if (!hasColumn(st, "messages", "outcome")) st.execute("ALTER TABLE messages ADD COLUMN outcome TEXT");
+            // Replies a previous run never finished (it crashed or was killed) won't be: close them
+            // once here, so the search index doesn't wait on them forever
+            st.execute("UPDATE messages SET outcome = 'interrupted' " +
+                "WHERE role = 'assistant' AND model IS NULL AND outcome IS NULL");
+        }
+        writeConn.setAutoCommit(false);
+        readConn = DriverManager.getConnection(url);
+
+        conversationIds = new AtomicLong(maxId("conversations"));
+        messageIds = new AtomicLong(maxId("messages"));
+
+        writer = new Thread(this::writeLoop, "chat-store-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // --- Writes (async) ---
+
+    public long newConversation(String title) {
+        long id = conversationIds.incrementAndGet();
+        queue.add(new NewConversation(id, title, System.currentTimeMillis()));
+        return id;
+    }
+
+    public long addMessage(long conversationId, String role, String content) {
+        long id = messageIds.incrementAndGet();
+        queue.add(new NewMessage(id, conversationId, role, content, System.currentTimeMillis()));
+        return id;
+    }
+
+    // Streamed tokens; consecutive appends to the same message are merged into one UPDATE
+    public void appendChunk(long messageId, String text) {
+        if (!text.isEmpty()) queue.add(new Append(messageId, text));
+    }
+
+    // outcome is "ok", "cancelled", "error" or "cached" ("interrupted" is set at startup for
+    // replies a crashed run left open); every started reply gets finished
+    public void finishMessage(long messageId, String model, long ttftMs, long totalMs, String outcome) {
+        queue.add(new Finish(messageId, model, ttftMs, totalMs, outcome));
+    }
+
+    // --- Reads (off the FX thread) ---
+
+    public CompletableFuture<Long> latestConversation() {
+        return CompletableFuture.supplyAsync(() -> {
+            try (Statement st = readConn.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT id FROM conversations ORDER BY updated_at DESC, id DESC LIMIT 1")) {
+                return rs.next() ? rs.getLong(1) : -1L;
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }, reader);
+    }
+
+    // One page of history older than beforeId (Long.MAX_VALUE for the newest page), oldest first
+    public CompletableFuture<List<StoredMessage>> loadPage(long conversationId, long beforeId, int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<StoredMessage> page = new ArrayList<>(limit);
+            try (PreparedStatement ps = readConn.prepareStatement(
+                    "SELECT id, role, content FROM messages WHERE conversation_id = ? AND id < ? " +
+                    "ORDER BY id DESC LIMIT ?")) {
+                ps.setLong(1, conversationId);
+                ps.setLong(2, beforeId);
+                ps.setInt(3, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) page.add(new StoredMessage(rs.getLong(1), rs.getString(2), rs.getString(3)));
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            Collections.reverse(page);
+            return page;
+        }, reader);
+    }
+
+    // Complete messages after afterId, oldest first, for the search index. Stops before a reply
+    // that is still streaming, however long it takes, so it is picked up once finished.
+    public CompletableFuture<List<IndexedMessage>> messagesAfter(long afterId, int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<IndexedMessage> rows = new ArrayList<>(limit);
+            try (PreparedStatement ps = readConn.prepareStatement(
+                    "SELECT id, conversation_id, role, content, " +
+                    "role <> 'assistant' OR model IS NOT NULL OR outcome IS NOT NULL FROM messages " +
+                    "WHERE id > ? ORDER BY id LIMIT ?")) {
+                ps.setLong(1, afterId);
+                ps.setInt(2, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next() && rs.getBoolean(5)) {
+                        rows.add(new IndexedMessage(rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getString(4)));
+                    }
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            return rows;
+        }, reader);
+    }
+
+    // Messages by id (search results), in no particular order
+    public CompletableFuture<List<IndexedMessage>> messages(long[] ids) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<IndexedMessage> rows = new ArrayList<>(ids.length);
+            if (ids.length == 0) return rows;
+            String marks = String.join(",", Collections.nCopies(ids.length, "?"));
+            try (PreparedStatement ps = readConn.prepareStatement(
+                    "SELECT id, conversation_id, role, content FROM messages WHERE id IN (" + marks + ")")) {
+                for (int i = 0; i < ids.length; i++) ps.setLong(i + 1, ids[i]);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(new IndexedMessage(rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getString(4)));
+                    }
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            return rows;
+        }, reader);
+    }
+
+    // --- Writer ---
+
+    private void writeLoop() {
+        List<Op> batch = new ArrayList<>(MAX_BATCH);
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+                // Give a streaming reply a moment to pile up a few tokens
+                Op next = queue.poll(20, TimeUnit.MILLISECONDS);
+                if (next != null) batch.add(next);
+                queue.drainTo(batch, MAX_BATCH - batch.size());
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            if (batch.remove(POISON)) running = false;
+            if (!batch.isEmpty()) apply(batch);
+            batch.clear();
+        }
+    }
+
+    // One transaction per batch. If it fails, the ops are replayed one transaction each so a single
+    // bad op (and only that one) is dropped, instead of every tab's chunks in the batch.
+    private void apply(List<Op> batch) {
+        try {
+            write(batch);
+        } catch (SQLException e) {
+            try { writeConn.rollback(); } catch (SQLException ignore) {}
+            if (batch.size() == 1) {
+                System.out.println("Chat store: dropped a " + batch.get(0).getClass().getSimpleName() + " write: " + e.getMessage());
+                return;
+            }
+            for (Op op : batch) apply(List.of(op));
+        }
+    }
+
+    private void write(List<Op> batch) throws SQLException {
+        try (PreparedStatement newConv = writeConn.prepareStatement(
+                 "INSERT INTO conversations (id, title, created_at, updated_at) VALUES (?, ?, ?, ?)");
+             PreparedStatement newMsg = writeConn.prepareStatement(
+                 "INSERT INTO messages (id, conversation_id, role, content, created_at) VALUES (?, ?, ?, ?, ?)");
+             PreparedStatement touch = writeConn.prepareStatement(
+                 "UPDATE conversations SET updated_at = ? WHERE id = ?");
+             PreparedStatement append = writeConn.prepareStatement(
+                 "UPDATE messages SET content = content || ? WHERE id = ?");
+             PreparedStatement finish = writeConn.prepareStatement(
+                 "UPDATE messages SET model = ?, ttft_ms = ?, total_ms = ?, outcome = ? WHERE id = ?")) {
+
+            StringBuilder merged = new StringBuilder();
+            long mergedId = -1;
+            for (Op op : batch) {
+                if (op instanceof Append a && a.messageId() == mergedId) {
+                    merged.append(a.text());
+                    continue;
+                }
+                flushAppend(append, mergedId, merged);
+                mergedId = -1;
+
+                if (op instanceof NewConversation c) {
+                    newConv.setLong(1, c.id());
+                    newConv.setString(2, c.title());
+                    newConv.setLong(3, c.at());
+                    newConv.setLong(4, c.at());
+                    newConv.executeUpdate();
+                } else if (op instanceof NewMessage m) {
+                    newMsg.setLong(1, m.id());
+                    newMsg.setLong(2, m.conversationId());
+                    newMsg.setString(3, m.role());
+                    newMsg.setString(4, m.content());
+                    newMsg.setLong(5, m.at());
+                    newMsg.executeUpdate();
+                    touch.setLong(1, m.at());
+                    touch.setLong(2, m.conversationId());
+                    touch.executeUpdate();
+                } else if (op instanceof Append a) {
+                    mergedId = a.messageId();
+                    merged.append(a.text());
+                } else if (op instanceof Finish f) {
+                    finish.setString(1, f.model());
+                    finish.setLong(2, f.ttftMs());
+                    finish.setLong(3, f.totalMs());
+                    finish.setString(4, f.outcome());
+                    finish.setLong(5, f.messageId());
+                    finish.executeUpdate();
+                }
+            }
+            flushAppend(append, mergedId, merged);
+            writeConn.commit();
+        }
+    }
+
+    private static void flushAppend(PreparedStatement append, long id, StringBuilder text) throws SQLException {
+        if (id < 0 || text.length() == 0) return;
+        append.setString(1, text.toString());
+        append.setLong(2, id);
+        append.executeUpdate();
+        text.setLength(0);
+    }
+
+    // Databases from before a column was added get it on open
+    private static boolean hasColumn(Statement st, String table, String column) throws SQLException {
+        try (ResultSet rs = st.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equals(rs.getString("name"))) return true;
+            }
+        }
+        return false;
+    }
+
+    private long maxId(String table) throws SQLException {
+        try (Statement st = writeConn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // Flushes pending writes, then closes both connections
+    @Override
+    public void close() {
+        queue.add(POISON);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+        }
+        reader.shutdownNow();
+        try { readConn.close(); } catch (SQLException ignore) {}
+        try { writeConn.close(); } catch (SQLException ignore) {}
+    }
+}
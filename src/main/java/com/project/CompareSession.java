@@ -0,0 +1,265 @@
+package com.project;
+
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+// One prompt sent to several models at once, each streaming into its own column of a tab.
+// Columns are independent: each waits for its own scheduler slot, reads its stream on a virtual
+// thread of the shared executor and can be stopped alone. Text and stats reach the FX thread
+// through one StreamRenderer per column, so N streams cost N appends per frame, not a runLater
+// per token. Public methods are called on the FX thread.
+public class CompareSession {
+
+    private static final int TITLE_LENGTH = 24;
+
+    private final ChatSession.Host host;
+    private final Runnable changed;           // FX thread: a column started or finished
+    private final String prompt;
+    private final Tab tab = new Tab();
+    private final List<Column> columns = new ArrayList<>();
+
+    public CompareSession(ChatSession.Host host, String prompt, List<String> models, Runnable changed) {
+        this.host = host;
+        this.prompt = prompt;
+        this.changed = changed;
+
+        String title = prompt.length() > TITLE_LENGTH ? prompt.substring(0, TITLE_LENGTH) + "…" : prompt;
+        tab.setText("⚖ " + title);
+        tab.setTooltip(new Tooltip(prompt));
+        tab.setUserData(this);
+
+        HBox row = new HBox(8);
+        row.setPadding(new Insets(8));
+        for (String model : models) {
+            Column column = new Column(model);
+            columns.add(column);
+            HBox.setHgrow(column.box, Priority.ALWAYS);
+            row.getChildren().add(column.box);
+        }
+        tab.setContent(row);
+    }
+
+    public Tab tab() { return tab; }
+
+    public boolean isRunning() {
+        for (Column c : columns) {
+            if (c.running) return true;
+        }
+        return false;
+    }
+
+    public void start() {
+        for (Column c : columns) c.start();
+        changed.run();
+    }
+
+    public void cancel() {
+        for (Column c : columns) c.cancel();
+    }
+
+    // Tab closed or window closing
+    public void close() {
+        cancel();
+    }
+
+    // --- One model ---
+
+    private final class Column {
+        final String model;
+        final VBox box = new VBox(4);
+        final Label stats = new Label("waiting for a slot ...");
+        final Button stop = new Button("Stop");
+        final TextArea output = new TextArea();
+
+        boolean running = false;                                  // FX thread
+        volatile boolean cancelled = false;
+        volatile CompletableFuture<RequestScheduler.Permit> pendingPermit;
+        volatile EndpointPool.Stream stream;
+        volatile Future<?> task;
+        volatile RequestScheduler.Permit held;   // handed to task
+        volatile boolean reading = false;        // task got as far as read()
+        GenerationTuner.Tuning tuning;
+
+        // Written by the reader thread, shown once per frame
+        volatile long startNanos, ttftMs = -1, tokens = 0;
+
+        Column(String model) {
+            this.model = model;
+            Label name = new Label(model);
+            name.setStyle("-fx-font-weight: bold;");
+            HBox header = new HBox(6, name, stop);
+            stop.setStyle("-fx-background-color: transparent; -fx-border-color: grey; -fx-border-radius: 5px; -fx-padding: 0 6 0 6;");
+            stop.setOnAction(e -> cancel());
+            stats.setStyle("-fx-font-family: monospace; -fx-font-size: 10px;");
+            output.setEditable(false);
+            output.setWrapText(true);
+            output.setPrefWidth(200);
+            VBox.setVgrow(output, Priority.ALWAYS);
+            box.getChildren().addAll(header, stats, output);
+        }
+
+        // FX thread. Same chat endpoint and tuned options a chat tab would use for this model, so
+        // the comparison (and the loaded model) matches what the chat gets
+        void start() {
+            running = true;
+            startNanos = System.nanoTime();
+            tuning = host.tuner().tune(model);
+            JSONObject body = new JSONObject()
+                .put("model", model)
+                .put("messages", new JSONArray().put(new JSONObject().put("role", "user").put("content", prompt)))
+                .put("stream", true)
+                .put("keep_alive", tuning.keepAliveParam())
+                .put("options", tuning.toOptions());
+            String json = body.toString();
+            Function<URI, HttpRequest> request = base -> HttpRequest.newBuilder()
+                .uri(base.resolve("/api/chat"))
+                .header("Content-Type", "application/json")
+                .POST(BodyPublishers.ofString(json))
+                .build();
+
+            CompletableFuture<RequestScheduler.Permit> slot =
+                host.scheduler().acquire(model, RequestScheduler.Priority.INTERACTIVE, this);
+            pendingPermit = slot;
+            if (slot.isDone()) stats.setText("starting ...");
+            slot.thenAccept(permit -> {
+                if (cancelled) { permit.close(); return; }
+                status("connecting ...");
+                permit.endpoint().residency().ensureLoaded(model, () -> status("loading model ..."))
+                    .whenComplete((v, err) -> {
+                        if (cancelled) { permit.close(); return; }
+                        if (err != null) {
+                            permit.close();
+                            Platform.runLater(() -> finish("could not load " + model));
+                            return;
+                        }
+                        held = permit;
+                        task = host.executor().submit(() -> read(request, permit));
+                        // Stop pressed between the check above and here: cancel() saw no task
+                        if (cancelled && task.cancel(true) && !reading) permit.close();
+                    });
+            }).exceptionally(err -> {
+                if (!cancelled) Platform.runLater(() -> finish("failed: " + err.getMessage()));
+                return null;
+            });
+        }
+
+        // Reader thread
+        private void read(Function<URI, HttpRequest> request, RequestScheduler.Permit permit) {
+            reading = true;
+            StreamRenderer renderer = new StreamRenderer(output::appendText, this::showProgress);
+            NdjsonStreamParser.Chunk chunk = new NdjsonStreamParser.Chunk();
+            RequestMetrics server = null;
+            String outcome = "error";
+            EndpointPool.Stream s = null;
+            try {
+                s = host.pool().stream(model, request, permit.endpoint());
+                stream = s;
+                if (cancelled) s.close();   // Stop pressed while connecting
+                while (s.next(chunk)) {
+                    if (cancelled) break;
+                    if (chunk.error != null) {
+                        renderer.push("\n[error: " + chunk.error + "]");
+                        break;
+                    }
+                    if (chunk.done) {
+                        server = RequestMetrics.of(model, "ok", ttftMs, -1, chunk);
+                        outcome = "ok";
+                    }
+                    if (chunk.content.isEmpty()) continue;
+                    if (ttftMs < 0) ttftMs = (System.nanoTime() - startNanos) / 1_000_000;
+                    tokens++;   // Ollama streams one token per chunk
+                    renderer.push(chunk.content);
+                }
+            } catch (Exception e) {
+                if (!cancelled) {
+                    e.printStackTrace();
+                    renderer.push("\n[error: " + e.getMessage() + "]");
+                }
+            } finally {
+                if (s != null) s.close();
+                stream = null;
+                permit.close();
+                if (cancelled) outcome = "cancelled";
+                long totalMs = (System.nanoTime() - startNanos) / 1_000_000;
+                RequestMetrics m = server == null
+                    ? new RequestMetrics(model, outcome, ttftMs, totalMs, -1, -1, -1, -1, -1)
+                    : new RequestMetrics(model, outcome, ttftMs, totalMs, server.loadMs(),
+                        server.promptTokens(), server.promptEvalMs(), server.evalTokens(), server.evalMs());
+                host.metrics().record(m);
+                if ("ok".equals(outcome) && s != null && s.endpoint() != null) s.endpoint().residency().touched(model, tuning.keepAlive());
+                renderer.finish(() -> finish(summary(m)));
+            }
+        }
+
+        // FX thread, once per frame with new text: client-side numbers until the server's arrive
+        private void showProgress() {
+            if (ttftMs < 0) return;
+            double elapsed = (System.nanoTime() - startNanos) / 1e9;
+            double genSeconds = elapsed - ttftMs / 1000.0;
+            double rate = genSeconds > 0 ? tokens / genSeconds : 0;
+            stats.setText(String.format("TTFT %d ms · %d tok · %.1f tok/s · %.1f s", ttftMs, tokens, rate, elapsed));
+        }
+
+        private String summary(RequestMetrics m) {
+            double rate = m.tokensPerSecond();
+            long count = m.evalTokens() >= 0 ? m.evalTokens() : tokens;
+            return String.format("TTFT %s · %d tok · %s · %.1f s%s",
+                m.ttftMs() < 0 ? "-" : m.ttftMs() + " ms", count,
+                rate < 0 ? "- tok/s" : String.format("%.1f tok/s", rate), m.totalMs() / 1000.0,
+                "ok".equals(m.outcome()) ? "" : " (" + m.outcome() + ")");
+        }
+
+        private void status(String text) {
+            Platform.runLater(() -> { if (running && tokens == 0) stats.setText(text); });
+        }
+
+        // FX thread
+        void cancel() {
+            if (!running || cancelled) return;
+            cancelled = true;
+            CompletableFuture<RequestScheduler.Permit> slot = pendingPermit;
+            if (slot != null) slot.cancel(false);   // still queued: just leave the queue
+            EndpointPool.Stream s = stream;
+            if (s != null) s.close();               // unblocks the reader
+            Future<?> t = task;
+            if (t == null) {
+                finish("cancelled");                // never reached the server
+                return;
+            }
+            t.cancel(true);                         // interrupts a reader still waiting for headers
+            if (!reading) {                         // cancelled before it ran: read() won't release
+                held.close();
+                finish("cancelled");
+            }
+        }
+
+        // FX thread; only the first call counts
+        private void finish(String text) {
+            if (!running) return;
+            running = false;
+            stats.setText(text);
+            stop.setDisable(true);
+            changed.run();
+        }
+    }
+}
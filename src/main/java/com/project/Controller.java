@@ -4,197 +4,303 @@ import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
 import javafx.scene.control.TextField;
+import javafx.scene.control.Tooltip;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.HBox;
-import javafx.scene.layout.VBox;
-import javafx.scene.text.Text;
 import javafx.event.ActionEvent;
 import javafx.application.Platform;
 import java.net.URL;
 import java.util.ResourceBundle;
 import javafx.fxml.Initializable;
-import javafx.geometry.Insets;
-import javafx.geometry.Pos;
 
-import java.net.URI;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.net.http.HttpRequest.BodyPublishers;
-import java.nio.charset.StandardCharsets;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.InputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.nio.file.Files;
-import java.util.Base64;
-import java.util.concurrent.CompletableFuture;
+import java.nio.file.Path;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicBoolean;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-public class Controller implements Initializable {
+public class Controller implements Initializable, ChatSession.Host {
 
     // Models
-    private static final String TEXT_MODEL   = "gemma3:1b";
-    private static final String VISION_MODEL = "llava-phi3";
+    static final String TEXT_MODEL   = "gemma3:1b";
+    static final String VISION_MODEL = "llava-phi3";
 
-    @FXML private Button send, submit, cancel, clip,limpiar;
+    @FXML private Button send, submit, cancel, clip, limpiar, newChat, docsButton, compareButton;
     // @FXML private Text textInfo;
-    @FXML private VBox chatBox;
-    @FXML private TextField textfi;
-    @FXML private ScrollPane scrollPane;
-
+    @FXML private TabPane tabs;
+    @FXML private TextField textfi, searchField;
+    @FXML private Label statsLabel;
+    @FXML private ScrollPane imageStrip;
+    @FXML private HBox thumbStrip;
 
+    // Shared by every tab
     private final HttpClient httpClient = HttpClient.newHttpClient();
-    private CompletableFuture<HttpResponse<InputStream>> streamRequest;
-    private CompletableFuture<HttpResponse<String>> completeRequest;
-    private final AtomicBoolean isCancelled = new AtomicBoolean(false);
-    private InputStream currentInputStream;
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
-    private Future<?> streamReadingTask;
-    private volatile boolean isFirst = false;
-    private String lastImageBase64 = null;
-    private boolean useImage = false;
+    private final EndpointPool pool = EndpointPool.fromSettings(httpClient);
+    private final RequestScheduler scheduler = RequestScheduler.fromSettings(pool);
+    // Stream readers block on I/O; a virtual thread each lets every tab stream at once
+    private final ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final GenerationTuner tuner = new GenerationTuner(metrics, pool);
+
+    // History
+    private static final String DB_PATH = "data/xavigpt.db";
+    private ChatStore store;                      // null when the database can't be opened
+
+    // Semantic search over the history (null when history or search is off)
+    private static final String VECTORS_PATH = "data/xavigpt.vectors";
+    private static final int SEARCH_RESULTS = 20;
+    private SemanticIndex index;
+
+    // Local files retrieved into prompts (null when off or unavailable)
+    private static final String DOCS_DB_PATH = "data/docs.db";
+    private static final String DOCS_VECTORS_PATH = "data/docs.vectors";
+    private DocumentIndex docs;
+
+    // Prepared images, shared by the tabs
+    private static final double TABS_BOTTOM = 60.0, TABS_BOTTOM_WITH_STRIP = 114.0;
+    private final ImageCache images = ImageCache.fromSettings();
+
+    // Opt-in response cache (xavigpt.cache=true)
+    private ResponseCache cache;
 
 
 
     @Override
     public void initialize(URL url, ResourceBundle rb) {
-        setButtonsIdle();
-
-        chatBox.heightProperty().addListener((obs, oldVal, newVal) -> scrollPane.setVvalue(1.0));
+        tabs.getSelectionModel().selectedItemProperty().addListener((obs, oldTab, tab) -> updateButtons());
+        TranscriptLog.deleteStale();
+
+        ChatSession first = openSession();
+        openHistory(first);
+        pool.setLoadOptions(tuner::loadOptions, tuner::keepAliveFor);
+        pool.start();
+        openDocuments(first);
+        images.setOnChange(() -> Platform.runLater(this::refreshImageStrip));
+        refreshImageStrip();
+
+        if (Settings.cacheEnabled()) {
+            try {
+                cache = ResponseCache.fromSettings();
+            } catch (Exception e) {
+                e.printStackTrace();
+                first.addSystemMessage("Response cache disabled: " + e.getMessage());
+            }
+        }
     }
 
-    // --- UI actions ---
-
-    private void addUserMessage(String msg) {
-        Platform.runLater(() -> {
-            Label bubble = new Label(msg);
-            bubble.setWrapText(true);
-            bubble.setStyle(
-                "-fx-background-color: #DCF8C6;" +   // verde claro estilo WhatsApp
-                "-fx-padding: 10;" +
-                "-fx-background-radius: 10;" +
-                "-fx-font-size: 14px;"
-            );
-
-            HBox container = new HBox(bubble);
-            container.setAlignment(Pos.CENTER_RIGHT);   // alineado a la derecha
-            container.setPadding(new Insets(5, 5, 5, 5));
-
-            chatBox.getChildren().add(container);
-            scrollPane.setVvalue(1.0);
-        });
-    }
+    // --- Tabs ---
 
-    private void addAssistantMessage(String msg) {
-        Platform.runLater(() -> {
-            Label bubble = new Label(msg);
-            bubble.setWrapText(true);
-            bubble.setStyle(
-                "-fx-background-color: #FFFFFF;" +   // blanco estilo ChatGPT
-                "-fx-padding: 10;" +
-                "-fx-background-radius: 10;" +
-                "-fx-font-size: 14px;" +
-                "-fx-border-color: #E0E0E0;" +
-                "-fx-border-radius: 10;"
-            );
-
-            HBox container = new HBox(bubble);
-            container.setAlignment(Pos.CENTER_LEFT);   // alineado a la izquierda
-            container.setPadding(new Insets(5, 5, 5, 5));
-
-            chatBox.getChildren().add(container);
-            scrollPane.setVvalue(1.0);
+    private ChatSession openSession() {
+        ChatSession session = new ChatSession(this, "New chat");
+        Tab tab = session.tab();
+        tab.setOnClosed(e -> {
+            session.close();
+            if (tabs.getTabs().isEmpty()) openSession();
         });
+        tabs.getTabs().add(tab);
+        tabs.getSelectionModel().select(tab);
+        return session;
     }
 
-    private void addSystemMessage(String msg) {
-        Platform.runLater(() -> {
-            Label bubble = new Label(msg);
-            bubble.setWrapText(true);
-            bubble.setStyle(
-                "-fx-background-color: #EEEEEE;" +
-                "-fx-padding: 8;" +
-                "-fx-background-radius: 8;" +
-                "-fx-font-size: 12px;" +
-                "-fx-text-fill: #555555;"
-            );
-
-            HBox container = new HBox(bubble);
-            container.setAlignment(Pos.CENTER);   // centrado
-            container.setPadding(new Insets(5, 5, 5, 5));
-
-            chatBox.getChildren().add(container);
-            scrollPane.setVvalue(1.0);
-        });
+    // Selected tab's session; from a search results tab, the last chat tab
+    private ChatSession current() {
+        Tab selected = tabs.getSelectionModel().getSelectedItem();
+        if (selected != null && selected.getUserData() instanceof ChatSession s) return s;
+        for (int i = tabs.getTabs().size() - 1; i >= 0; i--) {
+            if (tabs.getTabs().get(i).getUserData() instanceof ChatSession s) return s;
+        }
+        return openSession();
     }
 
+    @FXML
+    private void newChat(ActionEvent event) {
+        openSession();
+        textfi.requestFocus();
+    }
 
-
+    // Same prompt to every model in xavigpt.compare.models, one column each, in a tab of its own
     @FXML
-    private void callStream(ActionEvent event) {
+    private void compareModels(ActionEvent event) {
         String prompt = textfi.getText().trim();
         if (prompt.isEmpty()) return;
-
-        addUserMessage(prompt);
         textfi.clear();
+        CompareSession compare = new CompareSession(this, prompt, Settings.compareModels(), () -> {
+            updateButtons();
+            refreshStats();
+        });
+        Tab tab = compare.tab();
+        tab.setOnClosed(e -> compare.close());
+        tabs.getTabs().add(tab);
+        tabs.getSelectionModel().select(tab);
+        compare.start();
+    }
 
-        setButtonsRunning();
-        isCancelled.set(false);
+    // --- Image strip ---
+
+    // FX thread. One button per cached image, newest first; shown once there is something in it
+    private void refreshImageStrip() {
+        thumbStrip.getChildren().clear();
+        for (ImageCache.Entry entry : images.entries()) {
+            Button b = new Button();
+            b.setStyle("-fx-background-color: transparent; -fx-border-color: grey; -fx-border-radius: 3px; -fx-padding: 1;");
+            if (entry.thumbnail() != null) {
+                b.setGraphic(new ImageView(new Image(new ByteArrayInputStream(entry.thumbnail()))));
+            } else {
+                b.setText(entry.name());
+            }
+            b.setTooltip(new Tooltip(entry.width() > 0 ? entry.name() + " (" + entry.width() + "x" + entry.height() + ")" : entry.name()));
+            b.setOnAction(e -> current().attachCached(entry.digest()));
+            thumbStrip.getChildren().add(b);
+        }
+        boolean show = !thumbStrip.getChildren().isEmpty();
+        imageStrip.setVisible(show);
+        AnchorPane.setBottomAnchor(tabs, show ? TABS_BOTTOM_WITH_STRIP : TABS_BOTTOM);
+    }
 
-        // Si el usuario activó el modo imagen
-        if (useImage && lastImageBase64 != null) {
-            addSystemMessage("Analyzing image + text...");
-            ensureModelLoaded(VISION_MODEL).whenComplete((v, err) -> {
-                if (err != null) {
-                    addSystemMessage("Error loading vision model.");
-                    setButtonsIdle();
-                    return;
-                }
-                executeImageRequest(VISION_MODEL, prompt, lastImageBase64);
-            });
+    // --- History ---
+
+    // The first tab resumes the most recent conversation, reading only its newest page
+    private void openHistory(ChatSession first) {
+        try {
+            store = new ChatStore(DB_PATH);
+        } catch (Exception e) {
+            e.printStackTrace();
+            first.addSystemMessage("History disabled: " + e.getMessage());
             return;
         }
 
-        // Modo texto normal
-        addSystemMessage("Thinking...");
-        ensureModelLoaded(TEXT_MODEL).whenComplete((v, err) -> {
-            if (err != null) {
-                addSystemMessage("Error loading model.");
-                setButtonsIdle();
-                return;
+        store.latestConversation().thenAccept(first::resume)
+            .exceptionally(e -> { e.printStackTrace(); return null; });
+
+        if (Settings.searchEnabled()) {
+            try {
+                index = SemanticIndex.fromSettings(Path.of(VECTORS_PATH));
+                index.start(store, pool, scheduler, tuner);
+            } catch (Exception e) {
+                e.printStackTrace();
+                first.addSystemMessage("Search disabled: " + e.getMessage());
             }
-            executeTextRequest(TEXT_MODEL, prompt, true);
-        });
+        }
     }
 
+    // --- Documents ---
 
+    private void openDocuments(ChatSession first) {
+        if (!Settings.docsEnabled()) {
+            docsButton.setDisable(true);
+            return;
+        }
+        try {
+            docs = DocumentIndex.fromSettings(DOCS_DB_PATH, Path.of(DOCS_VECTORS_PATH));
+            docs.start(pool, scheduler, tuner);
+        } catch (Exception e) {
+            e.printStackTrace();
+            docsButton.setDisable(true);
+            first.addSystemMessage("Documents disabled: " + e.getMessage());
+        }
+    }
+
+    // Reading and chunking run on the index's own threads; picking the same folder again only
+    // reads what changed
+    @FXML
+    private void ingestDocuments(ActionEvent event) {
+        if (docs == null) return;
+        DirectoryChooser dc = new DirectoryChooser();
+        dc.setTitle("Choose a folder to ask questions about");
+        File dir = dc.showDialog(docsButton.getScene().getWindow());
+        if (dir == null) return;
+
+        ChatSession session = current();
+        session.addSystemMessage("Reading " + dir + " ...");
+        docs.ingest(dir.toPath()).whenComplete((report, err) -> {
+            Throwable cause = err != null && err.getCause() != null ? err.getCause() : err;
+            session.addSystemMessage(err == null ? report + " Embedding continues in the background."
+                : "Could not read " + dir + ": " + cause.getMessage());
+            Platform.runLater(this::refreshStats);
+        });
+    }
 
+    // --- Search ---
 
+    // Results open in their own tab; double-click one to open its conversation
     @FXML
-    private void callComplete(ActionEvent event) {
-        addSystemMessage("");
-        setButtonsRunning();
-        isCancelled.set(false);
+    private void searchHistory(ActionEvent event) {
+        String query = searchField.getText().trim();
+        if (query.isEmpty()) return;
+        if (index == null) {
+            current().addSystemMessage("Search is disabled (start with -Dxavigpt.search=true).");
+            return;
+        }
+
+        ListView<SemanticIndex.Hit> results = new ListView<>();
+        results.setPlaceholder(new Label("Searching ..."));
+        results.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(SemanticIndex.Hit hit, boolean empty) {
+                super.updateItem(hit, empty);
+                if (empty || hit == null) {
+                    setText(null);
+                    return;
+                }
+                String text = hit.content().strip().replaceAll("\\s+", " ");
+                if (text.length() > 160) text = text.substring(0, 160) + "…";
+                setText(String.format("%.2f  %s: %s", hit.score(), hit.role(), text));
+            }
+        });
+        results.setOnMouseClicked(e -> {
+            SemanticIndex.Hit hit = results.getSelectionModel().getSelectedItem();
+            if (e.getClickCount() == 2 && hit != null) openSession().resume(hit.conversationId());
+        });
+
+        Tab tab = new Tab("🔍 " + query, results);
+        tabs.getTabs().add(tab);
+        tabs.getSelectionModel().select(tab);
 
-        ensureModelLoaded(TEXT_MODEL).whenComplete((v, err) -> {
+        long start = System.nanoTime();
+        index.search(query, SEARCH_RESULTS).whenComplete((hits, err) -> Platform.runLater(() -> {
             if (err != null) {
-                Platform.runLater(() -> { addSystemMessage("Error loading model."); setButtonsIdle(); });
+                Throwable cause = err.getCause() != null ? err.getCause() : err;
+                results.setPlaceholder(new Label("Search failed: " + cause.getMessage()));
                 return;
             }
-            executeTextRequest(TEXT_MODEL, "Tell me a haiku.", false);
-        });
+            results.getItems().setAll(hits);
+            results.setPlaceholder(new Label("No matches among " + index.size() + " indexed messages."));
+            tab.setTooltip(new Tooltip(String.format("%d results in %d ms", hits.size(), (System.nanoTime() - start) / 1_000_000)));
+            refreshStats();
+        }));
+    }
+
+    // --- UI actions (on the selected tab) ---
+
+    @FXML
+    private void callStream(ActionEvent event) {
+        String prompt = textfi.getText().trim();
+        if (prompt.isEmpty()) return;
+        ChatSession session = current();
+        if (session.isRunning()) return;
+        textfi.clear();
+        session.send(prompt);
+    }
+
+    @FXML
+    private void callComplete(ActionEvent event) {
+        ChatSession session = current();
+        if (!session.isRunning()) session.complete();
     }
 
     @FXML
     private void callPicture(ActionEvent event) {
+        ChatSession session = current();
         FileChooser fc = new FileChooser();
         fc.setTitle("Choose an image");
         fc.getExtensionFilters().add(
@@ -203,338 +309,117 @@ public class Controller implements Initializable {
 
         File file = fc.showOpenDialog(clip.getScene().getWindow());
         if (file == null) {
-            addSystemMessage("No file selected.");
+            session.addSystemMessage("No file selected.");
             return;
         }
-
-        try {
-            byte[] bytes = Files.readAllBytes(file.toPath());
-            lastImageBase64 = Base64.getEncoder().encodeToString(bytes);
-            addSystemMessage("Image loaded. Press 'Use Img' to enable it.");
-        } catch (Exception e) {
-            addSystemMessage("Error reading image.");
-        }
+        session.attachImage(file);
     }
 
     @FXML
     private void toggleImageUsage(ActionEvent event) {
-        if (lastImageBase64 == null) {
-            addSystemMessage("No image loaded.");
-            return;
-        }
-
-        useImage = !useImage;
-
-        if (useImage) {
-            addSystemMessage("Image mode ON. Your next message will use the image.");
-        } else {
-            addSystemMessage("Image mode OFF.");
-        }
+        current().toggleImageUsage();
     }
 
-
     @FXML
     private void callBreak(ActionEvent event) {
-        isCancelled.set(true);
-        cancelStreamRequest();
-        cancelCompleteRequest();
-        Platform.runLater(() -> {
-            addSystemMessage("Request cancelled.");
-            scrollPane.setVvalue(1.0);
-            setButtonsIdle();
-        });
+        Tab selected = tabs.getSelectionModel().getSelectedItem();
+        if (selected == null) return;
+        if (selected.getUserData() instanceof CompareSession c) c.cancel();
+        else current().cancel();
     }
 
-    // --- Request helpers ---
-
-    // Text-only (stream or not)
-    private void executeTextRequest(String model, String prompt, boolean stream) {
-        JSONObject body = new JSONObject()
-            .put("model", model)
-            .put("prompt", prompt)
-            .put("stream", stream)
-            .put("keep_alive", "10m");
-
-        HttpRequest request = HttpRequest.newBuilder()
-            .uri(URI.create("http://localhost:11434/api/generate"))
-            .header("Content-Type", "application/json")
-            .POST(BodyPublishers.ofString(body.toString()))
-            .build();
-
-        if (stream) {
-            Platform.runLater(() ->{ 
-                addSystemMessage("Wait stream ... " + prompt);
-                scrollPane.setVvalue(1.0);
-            });
-            isFirst = true;
-
-            streamRequest = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
-                .thenApply(response -> {
-                    currentInputStream = response.body();
-                    streamReadingTask = executorService.submit(this::handleStreamResponse);
-                    return response;
-                })
-                .exceptionally(e -> {
-                    if (!isCancelled.get()) e.printStackTrace();
-                    Platform.runLater(this::setButtonsIdle);
-                    return null;
-                });
-
-        } else {
-            Platform.runLater(() ->{
-                 addSystemMessage("Wait complete ...");
-                 scrollPane.setVvalue(1.0);
-                });
-
-            completeRequest = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-                .thenApply(response -> {
-                    String responseText = safeExtractTextResponse(response.body());
-                    Platform.runLater(() -> { 
-                        addSystemMessage(responseText); setButtonsIdle();
-                        scrollPane.setVvalue(1.0);
-                     });
-                    return response;
-                })
-                .exceptionally(e -> {
-                    if (!isCancelled.get()) e.printStackTrace();
-                    Platform.runLater(this::setButtonsIdle);
-                    return null;
-                });
-        }
+    @FXML
+    private void clearChat(ActionEvent event) {
+        ChatSession session = current();
+        Platform.runLater(session::clear);
     }
 
-    // Image + prompt (non-stream) using vision model
-    private void executeImageRequest(String model, String prompt, String base64Image) {
-        Platform.runLater(() -> {
-            addSystemMessage("Analyzing picture ...");
-            scrollPane.setVvalue(1.0);
-        });
+    // --- ChatSession.Host ---
 
-        JSONObject body = new JSONObject()
-            .put("model", model)
-            .put("prompt", prompt)
-            .put("images", new JSONArray().put(base64Image))
-            .put("stream", true)
-            .put("keep_alive", "10m")
-            .put("options", new JSONObject()
-                .put("num_ctx", 2048)     // lower context to reduce memory
-                .put("num_predict", 256)  // shorter output to avoid OOM
-            );
-
-        HttpRequest request = HttpRequest.newBuilder()
-            .uri(URI.create("http://localhost:11434/api/generate"))
-            .header("Content-Type", "application/json")
-            .POST(BodyPublishers.ofString(body.toString()))
-            .build();
-
-        streamRequest = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
-        .thenApply(response -> {
-            currentInputStream = response.body();
-            streamReadingTask = executorService.submit(this::handleStreamResponse);
-            return response;
-        })
-        .exceptionally(e -> {
-            if (!isCancelled.get()) e.printStackTrace();
-            Platform.runLater(() -> {
-                addSystemMessage("Error during image streaming.");
-                setButtonsIdle();
-            });
-            return null;
-        });
+    @Override public EndpointPool pool() { return pool; }
 
-    }
+    @Override public RequestScheduler scheduler() { return scheduler; }
 
-    // Stream reader for text responses
-    private void handleStreamResponse() {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(currentInputStream, StandardCharsets.UTF_8))) {
-
-            HBox assistantBubble = null;
-            Label assistantLabel = null;
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (isCancelled.get()) break;
-                if (line.isBlank()) continue;
-
-                JSONObject jsonResponse = new JSONObject(line);
-                String chunk = jsonResponse.optString("response", "");
-                if (chunk.isEmpty()) continue;
-
-                if (assistantBubble == null) {
-                    // Primer chunk → crear burbuja de IA
-                    assistantLabel = new Label(chunk);
-                    assistantLabel.setWrapText(true);
-                    assistantLabel.setStyle(
-                        "-fx-background-color: #FFFFFF;" +
-                        "-fx-padding: 10;" +
-                        "-fx-background-radius: 10;" +
-                        "-fx-font-size: 14px;" +
-                        "-fx-border-color: #E0E0E0;" +
-                        "-fx-border-radius: 10;"
-                    );
-
-                    assistantBubble = new HBox(assistantLabel);
-                    assistantBubble.setAlignment(Pos.CENTER_LEFT);
-                    assistantBubble.setPadding(new Insets(5, 5, 5, 5));
-
-                    HBox finalBubble = assistantBubble;
-                    Platform.runLater(() -> {
-                        chatBox.getChildren().add(finalBubble);
-                        scrollPane.setVvalue(1.0);
-                    });
-
-                } else {
-                    // Siguientes chunks → añadir texto a la misma burbuja
-                    Label finalLabel = assistantLabel;
-                    Platform.runLater(() ->{ 
-                        finalLabel.setText(finalLabel.getText() + chunk);
-                        scrollPane.setVvalue(1.0);
-                    });
-                }
-            }
+    @Override public ChatStore store() { return store; }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            Platform.runLater(() -> {
-                addSystemMessage("Error during streaming.");
-                setButtonsIdle();
-            });
-        } finally {
-            try { if (currentInputStream != null) currentInputStream.close(); } catch (Exception ignore) {}
-            Platform.runLater(this::setButtonsIdle);
-        }
-    }
+    @Override public ResponseCache cache() { return cache; }
 
+    @Override public MetricsRegistry metrics() { return metrics; }
 
-    // --- Small utils ---
+    @Override public GenerationTuner tuner() { return tuner; }
 
-    private String safeExtractTextResponse(String bodyStr) {
-        // Extract "response" or fallback to error/message if present
-        try {
-            JSONObject o = new JSONObject(bodyStr);
-            String r = o.optString("response", null);
-            if (r != null && !r.isBlank()) return r;
-            if (o.has("message")) return o.optString("message");
-            if (o.has("error"))   return "Error: " + o.optString("error");
-        } catch (Exception ignore) {}
-        return bodyStr != null && !bodyStr.isBlank() ? bodyStr : "(empty)";
-    }
+    @Override public DocumentIndex docs() { return docs; }
 
-    private String tryParseAnyMessage(String bodyStr) {
-        try {
-            JSONObject o = new JSONObject(bodyStr);
-            if (o.has("response")) return o.optString("response", "");
-            if (o.has("message"))  return o.optString("message", "");
-            if (o.has("error"))    return "Error: " + o.optString("error", "");
-        } catch (Exception ignore) {}
-        return null;
-    }
+    @Override public ImageCache images() { return images; }
 
-    private void cancelStreamRequest() {
-        if (streamRequest != null && !streamRequest.isDone()) {
-            try {
-                if (currentInputStream != null) {
-                    System.out.println("Cancelling InputStream");
-                    currentInputStream.close();
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-            System.out.println("Cancelling StreamRequest");
-            if (streamReadingTask != null) {
-                streamReadingTask.cancel(true);
-            }
-            streamRequest.cancel(true);
-        }
-    }
+    @Override public ExecutorService executor() { return executorService; }
 
-    private void cancelCompleteRequest() {
-        if (completeRequest != null && !completeRequest.isDone()) {
-            System.out.println("Cancelling CompleteRequest");
-            completeRequest.cancel(true);
-        }
+    // FX thread
+    @Override
+    public void sessionChanged(ChatSession session) {
+        updateButtons();
+        refreshStats();
     }
 
-    private void setButtonsRunning() {
-        send.setDisable(true);
-        submit.setDisable(true);
-        clip.setDisable(true);
-        cancel.setDisable(false);
-    }
+    // --- Stats overlay ---
 
-    private void setButtonsIdle() {
-        send.setDisable(false);
-        submit.setDisable(false);
-        clip.setDisable(false);
-        cancel.setDisable(true);
-        streamRequest = null;
-        completeRequest = null;
+    @FXML
+    private void toggleStats(ActionEvent event) {
+        statsLabel.setVisible(!statsLabel.isVisible());
+        refreshStats();
     }
 
-    // Ensure given model is in memory; preload if needed
-    private CompletableFuture<Void> ensureModelLoaded(String modelName) {
-        return httpClient.sendAsync(
-                HttpRequest.newBuilder()
-                    .uri(URI.create("http://localhost:11434/api/ps"))
-                    .GET()
-                    .build(),
-                HttpResponse.BodyHandlers.ofString()
-            )
-            .thenCompose(resp -> {
-                boolean loaded = false;
-                try {
-                    JSONObject o = new JSONObject(resp.body());
-                    JSONArray models = o.optJSONArray("models");
-                    if (models != null) {
-                        for (int i = 0; i < models.length(); i++) {
-                            String name = models.getJSONObject(i).optString("name", "");
-                            String model = models.getJSONObject(i).optString("model", "");
-                            if (name.startsWith(modelName) || model.startsWith(modelName)) { loaded = true; break; }
-                        }
-                    }
-                } catch (Exception ignore) {}
-
-                if (loaded) return CompletableFuture.completedFuture(null);
-
-                Platform.runLater(() -> addSystemMessage("Loading model ..."));
-
-                String preloadJson = new JSONObject()
-                    .put("model", modelName)
-                    .put("stream", false)
-                    .put("keep_alive", "10m")
-                    .toString();
-
-                HttpRequest preloadReq = HttpRequest.newBuilder()
-                    .uri(URI.create("http://localhost:11434/api/generate"))
-                    .header("Content-Type", "application/json")
-                    .POST(BodyPublishers.ofString(preloadJson))
-                    .build();
-
-                return httpClient.sendAsync(preloadReq, HttpResponse.BodyHandlers.ofString())
-                        .thenAccept(r -> { /* warmed */ });
-            });
+    // FX thread; cheap enough to call after every request
+    private void refreshStats() {
+        if (!statsLabel.isVisible()) return;
+        StringBuilder sb = new StringBuilder();
+        RequestMetrics last = metrics.last();
+        if (last != null) sb.append("Last: ").append(last.summary()).append("\n\n");
+        sb.append(metrics.summary()).append("\n\n").append(tuner.stats())
+            .append("\n").append(scheduler.stats())
+            .append("\n").append(pool.stats());
+        if (cache != null) sb.append("\n").append(cache.stats());
+        if (index != null) sb.append("\n").append(index.stats());
+        if (docs != null) sb.append("\n").append(docs.stats());
+        sb.append("\n").append(images.stats());
+        Tab tab = tabs.getSelectionModel().getSelectedItem();
+        if (tab != null && tab.getUserData() instanceof ChatSession s) sb.append("\n").append(s.transcriptStats());
+        statsLabel.setText(sb.toString());
     }
 
-    @FXML
-    private void clearChat(ActionEvent event) {
-         Platform.runLater(() -> {
-             
-             chatBox.getChildren().clear();
-        });
+    // --- Small utils ---
+
+    // Buttons follow the selected tab; other tabs keep streaming in the background
+    private void updateButtons() {
+        Tab tab = tabs.getSelectionModel().getSelectedItem();
+        boolean running = tab != null && tab.getUserData() instanceof ChatSession s && s.isRunning();
+        boolean comparing = tab != null && tab.getUserData() instanceof CompareSession c && c.isRunning();
+        send.setDisable(running);
+        submit.setDisable(running);
+        clip.setDisable(running);
+        cancel.setDisable(!running && !comparing);
     }
 
     public void shutdown() {
         try {
-            isCancelled.set(true);
-
-            cancelStreamRequest();
-            cancelCompleteRequest();
-
-            if (currentInputStream != null) {
-                currentInputStream.close();
+            for (Tab tab : tabs.getTabs()) {
+                if (tab.getUserData() instanceof ChatSession s) s.close();
+                if (tab.getUserData() instanceof CompareSession c) c.close();
             }
 
             executorService.shutdownNow();
+            pool.close();
+            System.out.println(scheduler.stats());
+            System.out.println(pool.stats());
+            System.out.println(metrics.summary());
+
+            if (index != null) index.close();
+            if (docs != null) docs.close();
+            if (store != null) store.close();   // flushes queued writes
+            if (cache != null) {
+                System.out.println(cache.stats());
+                cache.close();
+            }
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -0,0 +1,128 @@
+package com.project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+// Per-conversation history sent to /api/chat. Ollama keeps the KV cache of the last
+// prompt per loaded model, so as long as each turn resends the same prefix only the
+// new tokens are prefilled. Touched from the FX thread only.
+//
+// Only a window of the newest turns is kept and sent (see fit); older ones are dropped, or
+// folded into a rolling summary that is sent in their place as a system message. The transcript
+// and ChatStore still have them, so this stays the size of the window however long the chat.
+public class Conversation {
+
+    public record Turn(String role, String content, int tokens) {}
+
+    // Per-message framing the chat template adds (role markers, separators)
+    private static final int MESSAGE_OVERHEAD = 4;
+
+    private final List<Turn> turns = new ArrayList<>();   // the window, oldest first
+    private String summary;             // covers turns before the window; null if none yet
+    private int summaryTokens = 0;
+    private long epoch = 0;             // bumped by clear(), so late summaries can be ignored
+
+    // Rough count for budgeting: ~4 characters per token for English text and code,
+    // which errs on the safe side for the small models used here
+    public static int estimateTokens(String text) {
+        return (text.length() + 3) / 4 + MESSAGE_OVERHEAD;
+    }
+
+    public void addUser(String content) {
+        turns.add(new Turn("user", content, estimateTokens(content)));
+    }
+
+    public void addAssistant(String content) {
+        turns.add(new Turn("assistant", content, estimateTokens(content)));
+    }
+
+    // Cancelled before any token arrived: drop the unanswered question so the next
+    // prompt doesn't carry two user turns in a row.
+    public void dropPendingUser() {
+        if (!turns.isEmpty() && turns.get(turns.size() - 1).role().equals("user")) {
+            turns.remove(turns.size() - 1);
+        }
+    }
+
+    public List<Turn> getTurns() {
+        return List.copyOf(turns);
+    }
+
+    public int size() {
+        return turns.size();
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    public void clear() {
+        turns.clear();
+        summary = null;
+        summaryTokens = 0;
+        epoch++;
+    }
+
+    // Tokens the next request will carry
+    public int windowTokens() {
+        int n = summaryTokens;
+        for (Turn t : turns) n += t.tokens();
+        return n;
+    }
+
+    // Keeps the window under budget tokens and returns the turns that just left it (oldest
+    // first). Once over budget the window shrinks to half of it in one go rather than by a
+    // turn per request: the prefix then stays the same for the next several turns, so Ollama
+    // can reuse its cache and only prefill the new tokens. The window starts on a user turn
+    // and always holds the newest one, even if that alone is over budget.
+    public List<Turn> fit(int budget) {
+        if (windowTokens() <= budget) return List.of();
+        int target = budget / 2;
+        int total = windowTokens();
+        int from = 0;
+        while (from < turns.size() - 1 && (total > target || !turns.get(from).role().equals("user"))) {
+            total -= turns.get(from).tokens();
+            from++;
+        }
+        List<Turn> evicted = List.copyOf(turns.subList(0, from));
+        turns.subList(0, from).clear();
+        return evicted;
+    }
+
+    // Replaces the summary of everything before the window (from a summary request started
+    // at `epoch`; ignored if the chat was cleared since)
+    public void setSummary(String text, long epoch) {
+        if (epoch != this.epoch || text == null || text.isBlank()) return;
+        summary = text.strip();
+        summaryTokens = estimateTokens(summary);
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    // Snapshot for a request body; an image only rides on the newest user turn.
+    // imageRef is normally an ImageRequestBody placeholder, swapped for the streamed image on send.
+    public JSONArray toMessages(String imageRef) {
+        JSONArray messages = new JSONArray();
+        if (summary != null) {
+            messages.put(new JSONObject()
+                .put("role", "system")
+                .put("content", "Summary of the earlier conversation: " + summary));
+        }
+        for (int i = 0; i < turns.size(); i++) {
+            Turn t = turns.get(i);
+            JSONObject m = new JSONObject()
+                .put("role", t.role())
+                .put("content", t.content());
+            if (imageRef != null && i == turns.size() - 1) {
+                m.put("images", new JSONArray().put(imageRef));
+            }
+            messages.put(m);
+        }
+        return messages;
+    }
+}
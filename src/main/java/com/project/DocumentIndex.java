@@ -0,0 +1,559 @@
+package com.project;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Local text, Markdown and code files for retrieval into prompts. ingest() walks a folder, then
+// reads changed files in batches on a fork-join pool sized to the cores: each file is
+// memory-mapped, hashed (SHA-256) and cut into overlapping chunks on line boundaries. Files
+// whose mtime and size match are not opened; files whose hash matches are not re-chunked.
+// Chunks go to data/docs.db, and a background thread embeds them into data/docs.vectors
+// ([chunk id, file id, vector] records) like SemanticIndex does for the history. A changed
+// file gets new chunk ids; vectors of its old chunks are skipped by the live check until
+// compaction drops them.
+public class DocumentIndex implements AutoCloseable {
+
+    public record Chunk(long id, String path, int startLine, int endLine, String text, float score) {
+        public String label() {
+            return Path.of(path).getFileName() + ":" + startLine + "-" + endLine;
+        }
+    }
+
+    // One chunk of a file being ingested
+    private record Piece(int startLine, int endLine, String text) {}
+
+    private record Candidate(Path path, long mtime, long size) {}
+
+    private record Known(long id, long mtime, long size, String sha256) {}
+
+    // What reading a file decided; written to the database by the ingest thread
+    private sealed interface Update permits Unchanged, Touched, Changed {}
+    private record Unchanged() implements Update {}
+    private record Touched(long fileId, long mtime, long size) implements Update {}
+    private record Changed(Candidate file, Known previous, String sha256, List<Piece> pieces) implements Update {}
+
+    private record Pending(long id, long fileId, String path, String text) {}
+
+    private static final Set<String> EXTENSIONS = Set.of(
+        "txt", "md", "markdown", "rst", "adoc", "org", "tex", "csv",
+        "java", "kt", "scala", "groovy", "gradle", "py", "rb", "php", "js", "mjs", "ts", "tsx", "jsx",
+        "c", "h", "cc", "cpp", "hpp", "cs", "go", "rs", "swift", "m", "lua", "r", "sh", "bat", "ps1", "sql",
+        "xml", "fxml", "html", "css", "json", "yaml", "yml", "toml", "ini", "properties", "cfg");
+    private static final Set<String> SKIPPED_DIRS = Set.of("target", "build", "node_modules", "dist", "out", "__pycache__");
+    private static final long MAX_FILE_BYTES = 5L << 20;
+    private static final int FILE_BATCH = 256;          // files read per fork-join round / per transaction
+    private static final int CHUNK_CHARS = 1500;        // ~400 tokens
+    private static final int OVERLAP_CHARS = 200;       // trailing lines repeated at the start of the next chunk
+    private static final int SNIFF_BYTES = 8192;        // a NUL in here means binary
+    private static final int EMBED_BATCH = 32;
+    private static final long IDLE_MS = 5_000;
+    private static final long BACKOFF_MS = 60_000;
+    private static final long RETRIEVE_TIMEOUT_MS = 5_000;
+
+    private final Connection writeConn;                 // ingest thread
+    private final Connection readConn;                  // reader executor
+    private final VectorFile vectors;
+    private final String model;
+    private final ForkJoinPool chunkers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    private final ExecutorService ingester = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "doc-ingest");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService reader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "doc-reader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // file id → {first chunk id, last chunk id} of its current chunks
+    private final Map<Long, long[]> live = new ConcurrentHashMap<>();
+    private long nextChunkId;                           // ingest thread
+    private long cursor;                                // last chunk id embedded (embedder thread)
+    private volatile boolean compactWanted = false;
+
+    private Embedder embedder;
+    private Thread embedderThread;
+    private volatile boolean closed = false;
+
+    private volatile int files, chunks;
+    private final AtomicLong embedded = new AtomicLong();
+    private volatile String lastError;
+    private volatile long lastEmbedMs = -1, lastScanMs = -1;
+
+    public DocumentIndex(String dbPath, Path vectorPath, String model) throws SQLException, IOException {
+        this.model = model;
+        Path parent = Path.of(dbPath).toAbsolutePath().getParent();
+        if (parent != null) parent.toFile().mkdirs();
+        String url = "jdbc:sqlite:" + dbPath;
+
+        writeConn = DriverManager.getConnection(url);
+        try (Statement st = writeConn.createStatement()) {
+            st.execute("PRAGMA journal_mode=WAL");
+            st.execute("PRAGMA synchronous=NORMAL");
+            st.execute("CREATE TABLE IF NOT EXISTS files (" +
+                "id INTEGER PRIMARY KEY, path TEXT NOT NULL UNIQUE, mtime INTEGER, size INTEGER, sha256 TEXT, " +
+                "first_chunk INTEGER, last_chunk INTEGER)");
+            st.execute("CREATE TABLE IF NOT EXISTS chunks (" +
+                "id INTEGER PRIMARY KEY, file_id INTEGER NOT NULL, start_line INTEGER, end_line INTEGER, text TEXT NOT NULL)");
+            st.execute("CREATE INDEX IF NOT EXISTS chunks_by_file ON chunks(file_id)");
+        }
+        writeConn.setAutoCommit(false);
+        readConn = DriverManager.getConnection(url);
+
+        vectors = new VectorFile(vectorPath, model);
+        cursor = Math.max(0, vectors.lastId());
+        try (Statement st = writeConn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT id, first_chunk, last_chunk FROM files WHERE first_chunk IS NOT NULL")) {
+            while (rs.next()) live.put(rs.getLong(1), new long[] { rs.getLong(2), rs.getLong(3) });
+        }
+        // Above anything ever embedded, so a new chunk is never mistaken for a dead one
+        nextChunkId = Math.max(scalar("SELECT COALESCE(MAX(id), 0) FROM chunks"), cursor) + 1;
+        countRows();
+    }
+
+    public static DocumentIndex fromSettings(String dbPath, Path vectorPath) throws SQLException, IOException {
+        return new DocumentIndex(dbPath, vectorPath, Settings.embedModel());
+    }
+
+    // Starts embedding chunks that have no vector yet
+    public void start(EndpointPool pool, RequestScheduler scheduler, GenerationTuner tuner) {
+        embedder = new Embedder(pool, scheduler, tuner, model);
+        embedderThread = Thread.ofPlatform().daemon().name("doc-embedder").start(this::embedLoop);
+    }
+
+    // --- Ingest ---
+
+    // Brings the index up to date with the files under root; completes with a one-line report.
+    // Folders are ingested one at a time.
+    public CompletableFuture<String> ingest(Path root) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return ingestNow(root.toAbsolutePath().normalize());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }, ingester);
+    }
+
+    private String ingestNow(Path root) throws Exception {
+        long start = System.nanoTime();
+        List<Candidate> found = walk(root);
+        Map<String, Known> known = knownFiles(root);
+
+        int changed = 0, pieces = 0;
+        List<List<Candidate>> batches = new ArrayList<>();
+        for (int i = 0; i < found.size(); i += FILE_BATCH) batches.add(found.subList(i, Math.min(found.size(), i + FILE_BATCH)));
+
+        // Batch n+1 is read on the pool while batch n is written
+        ForkJoinTask<List<Update>> next = batches.isEmpty() ? null : read(batches.get(0), known);
+        for (int b = 0; b < batches.size(); b++) {
+            List<Update> updates = next.get();
+            next = b + 1 < batches.size() ? read(batches.get(b + 1), known) : null;
+            for (Update u : updates) {
+                if (u instanceof Changed c) { changed++; pieces += c.pieces().size(); }
+            }
+            write(updates);
+            LockSupport.unpark(embedderThread);
+        }
+
+        Set<String> present = new HashSet<>();
+        for (Candidate c : found) present.add(c.path().toString());
+        int removed = 0;
+        for (Map.Entry<String, Known> e : known.entrySet()) {
+            if (!present.contains(e.getKey())) {
+                removeFile(e.getValue().id());
+                removed++;
+            }
+        }
+        writeConn.commit();
+        if (changed > 0 || removed > 0) compactWanted = true;
+        countRows();
+
+        return String.format("Read %d files under %s in %.1f s: %d new or changed (%d chunks), %d removed, %d unchanged.",
+            found.size(), root, (System.nanoTime() - start) / 1e9, changed, pieces, removed, found.size() - changed);
+    }
+
+    private List<Candidate> walk(Path root) throws IOException {
+        List<Candidate> found = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                String name = dir.getFileName() == null ? "" : dir.getFileName().toString();
+                boolean skip = !dir.equals(root) && (name.startsWith(".") || SKIPPED_DIRS.contains(name));
+                return skip ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && attrs.size() <= MAX_FILE_BYTES && EXTENSIONS.contains(extension(file))) {
+                    found.add(new Candidate(file, attrs.lastModifiedTime().toMillis(), attrs.size()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;   // unreadable: leave it out
+            }
+        });
+        return found;
+    }
+
+    private static String extension(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    // Files already indexed under root, by path
+    private Map<String, Known> knownFiles(Path root) throws SQLException {
+        Map<String, Known> known = new HashMap<>();
+        String prefix = root.toString().endsWith(File.separator) ? root.toString() : root + File.separator;
+        try (PreparedStatement ps = writeConn.prepareStatement(
+                "SELECT id, path, mtime, size, sha256 FROM files WHERE substr(path, 1, ?) = ?")) {
+            ps.setInt(1, prefix.length());
+            ps.setString(2, prefix);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    known.put(rs.getString(2), new Known(rs.getLong(1), rs.getLong(3), rs.getLong(4), rs.getString(5)));
+                }
+            }
+        }
+        return known;
+    }
+
+    // Parallel part: mapping, hashing, decoding and chunking, one task per file
+    private ForkJoinTask<List<Update>> read(List<Candidate> batch, Map<String, Known> known) {
+        return chunkers.submit(() -> batch.parallelStream()
+            .map(c -> prepare(c, known.get(c.path().toString())))
+            .toList());
+    }
+
+    private static Update prepare(Candidate file, Known previous) {
+        if (previous != null && previous.mtime() == file.mtime() && previous.size() == file.size()) return new Unchanged();
+        try (FileChannel ch = FileChannel.open(file.path(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > MAX_FILE_BYTES) return new Unchanged();
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(buf.duplicate());
+            String digest = HexFormat.of().formatHex(sha.digest());
+            if (previous != null && digest.equals(previous.sha256())) return new Touched(previous.id(), file.mtime(), size);
+            if (isBinary(buf)) return new Changed(file, previous, digest, List.of());
+            return new Changed(file, previous, digest, chunk(decode(buf)));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return new Unchanged();   // vanished or unreadable since the walk; next ingest retries
+        }
+    }
+
+    private static boolean isBinary(ByteBuffer buf) {
+        int n = Math.min(buf.limit(), SNIFF_BYTES);
+        for (int i = 0; i < n; i++) {
+            if (buf.get(i) == 0) return true;
+        }
+        return false;
+    }
+
+    private static CharBuffer decode(ByteBuffer buf) throws CharacterCodingException {
+        return StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+            .decode(buf.duplicate());
+    }
+
+    // Chunks of about CHUNK_CHARS on line boundaries; each starts with the last lines (up to
+    // OVERLAP_CHARS) of the one before, so a passage cut in two is still whole in one of them.
+    // A single line longer than a chunk is cut short.
+    private static List<Piece> chunk(CharSequence text) {
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') starts.add(i + 1);
+        }
+        if (starts.get(starts.size() - 1) < text.length()) starts.add(text.length());
+        int lines = starts.size() - 1;   // line i spans starts[i]..starts[i+1]
+
+        List<Piece> pieces = new ArrayList<>();
+        int first = 0;
+        while (first < lines) {
+            int end = first + 1;
+            while (end < lines && starts.get(end + 1) - starts.get(first) <= CHUNK_CHARS) end++;
+            int from = starts.get(first), to = Math.min(starts.get(end), from + CHUNK_CHARS);
+            String body = text.subSequence(from, to).toString();
+            if (!body.isBlank()) pieces.add(new Piece(first + 1, end, body));
+            if (end >= lines) break;
+            int next = end;
+            while (next - 1 > first && starts.get(end) - starts.get(next - 1) <= OVERLAP_CHARS) next--;
+            first = next;
+        }
+        return pieces;
+    }
+
+    // Ingest thread; one transaction per batch so the embedder can start on it
+    private void write(List<Update> updates) throws SQLException {
+        try (PreparedStatement touch = writeConn.prepareStatement("UPDATE files SET mtime = ?, size = ? WHERE id = ?");
+             PreparedStatement insertFile = writeConn.prepareStatement(
+                 "INSERT INTO files (path, mtime, size, sha256) VALUES (?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement updateFile = writeConn.prepareStatement(
+                 "UPDATE files SET mtime = ?, size = ?, sha256 = ?, first_chunk = ?, last_chunk = ? WHERE id = ?");
+             PreparedStatement dropChunks = writeConn.prepareStatement("DELETE FROM chunks WHERE file_id = ?");
+             PreparedStatement insertChunk = writeConn.prepareStatement(
+                 "INSERT INTO chunks (id, file_id, start_line, end_line, text) VALUES (?, ?, ?, ?, ?)")) {
+            for (Update u : updates) {
+                if (u instanceof Touched t) {
+                    touch.setLong(1, t.mtime());
+                    touch.setLong(2, t.size());
+                    touch.setLong(3, t.fileId());
+                    touch.executeUpdate();
+                } else if (u instanceof Changed c) {
+                    long fileId;
+                    if (c.previous() != null) {
+                        fileId = c.previous().id();
+                        dropChunks.setLong(1, fileId);
+                        dropChunks.executeUpdate();
+                    } else {
+                        insertFile.setString(1, c.file().path().toString());
+                        insertFile.setLong(2, c.file().mtime());
+                        insertFile.setLong(3, c.file().size());
+                        insertFile.setString(4, c.sha256());
+                        insertFile.executeUpdate();
+                        try (ResultSet keys = insertFile.getGeneratedKeys()) {
+                            keys.next();
+                            fileId = keys.getLong(1);
+                        }
+                    }
+                    long first = nextChunkId;
+                    for (Piece p : c.pieces()) {
+                        insertChunk.setLong(1, nextChunkId++);
+                        insertChunk.setLong(2, fileId);
+                        insertChunk.setInt(3, p.startLine());
+                        insertChunk.setInt(4, p.endLine());
+                        insertChunk.setString(5, p.text());
+                        insertChunk.executeUpdate();
+                    }
+                    long last = nextChunkId - 1;
+                    updateFile.setLong(1, c.file().mtime());
+                    updateFile.setLong(2, c.file().size());
+                    updateFile.setString(3, c.sha256());
+                    if (last >= first) {
+                        updateFile.setLong(4, first);
+                        updateFile.setLong(5, last);
+                        live.put(fileId, new long[] { first, last });
+                    } else {
+                        updateFile.setNull(4, Types.INTEGER);
+                        updateFile.setNull(5, Types.INTEGER);
+                        live.remove(fileId);
+                    }
+                    updateFile.setLong(6, fileId);
+                    updateFile.executeUpdate();
+                }
+            }
+            writeConn.commit();
+        } catch (SQLException e) {
+            writeConn.rollback();
+            throw e;
+        }
+    }
+
+    private void removeFile(long fileId) throws SQLException {
+        live.remove(fileId);
+        try (PreparedStatement chunks = writeConn.prepareStatement("DELETE FROM chunks WHERE file_id = ?");
+             PreparedStatement file = writeConn.prepareStatement("DELETE FROM files WHERE id = ?")) {
+            chunks.setLong(1, fileId);
+            chunks.executeUpdate();
+            file.setLong(1, fileId);
+            file.executeUpdate();
+        }
+    }
+
+    private boolean isLive(long chunkId, long fileId) {
+        long[] range = live.get(fileId);
+        return range != null && chunkId >= range[0] && chunkId <= range[1];
+    }
+
+    // --- Retrieval ---
+
+    // Up to k chunks scoring at least minScore against the query, best first. Gives up after a
+    // few seconds (e.g. the embedding model is still loading) rather than hold up the chat.
+    public CompletableFuture<List<Chunk>> retrieve(String query, int k, double minScore) {
+        if (embedder == null || vectors.size() == 0) return CompletableFuture.completedFuture(List.of());
+        long start = System.nanoTime();
+        return embedder.embed(List.of(query), RequestScheduler.Priority.INTERACTIVE, this).thenCompose(q -> {
+            long scanStart = System.nanoTime();
+            lastEmbedMs = (scanStart - start) / 1_000_000;
+            long[][] top = vectors.topK(q[0], k, this::isLive);
+            lastScanMs = (System.nanoTime() - scanStart) / 1_000_000;
+            Map<Long, Float> scores = new HashMap<>();
+            for (int i = 0; i < top[0].length; i++) {
+                float score = VectorFile.score(top[2][i]);
+                if (score >= minScore) scores.put(top[0][i], score);
+            }
+            return chunksById(scores);
+        }).orTimeout(RETRIEVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private CompletableFuture<List<Chunk>> chunksById(Map<Long, Float> scores) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<Chunk> out = new ArrayList<>(scores.size());
+            if (scores.isEmpty()) return out;
+            String marks = String.join(",", Collections.nCopies(scores.size(), "?"));
+            try (PreparedStatement ps = readConn.prepareStatement(
+                    "SELECT c.id, f.path, c.start_line, c.end_line, c.text FROM chunks c JOIN files f ON f.id = c.file_id " +
+                    "WHERE c.id IN (" + marks + ")")) {
+                int i = 1;
+                for (long id : scores.keySet()) ps.setLong(i++, id);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        out.add(new Chunk(rs.getLong(1), rs.getString(2), rs.getInt(3), rs.getInt(4), rs.getString(5),
+                            scores.get(rs.getLong(1))));
+                    }
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            out.sort((a, b) -> Float.compare(b.score(), a.score()));
+            return out;
+        }, reader);
+    }
+
+    public String stats() {
+        return String.format("documents: %d files, %d chunks, %d vectors (%d this session, %s)%s%s", files, chunks,
+            vectors.size(), embedded.get(), model,
+            lastScanMs < 0 ? "" : String.format(", last retrieval embed %d ms + scan %d ms", lastEmbedMs, lastScanMs),
+            lastError == null ? "" : ", " + lastError);
+    }
+
+    // --- Embedding ---
+
+    private void embedLoop() {
+        while (!closed) {
+            try {
+                List<Pending> batch = pendingAfter(cursor, EMBED_BATCH).get();
+                if (batch.isEmpty()) {
+                    if (compactWanted) {
+                        compactWanted = false;
+                        int dropped = vectors.compact(this::isLive);
+                        if (dropped > 0) System.out.println("Document vectors compacted: " + dropped + " stale records dropped");
+                    }
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(IDLE_MS));   // ingest unparks
+                    continue;
+                }
+                List<Pending> todo = new ArrayList<>(batch.size());
+                List<String> texts = new ArrayList<>(batch.size());
+                for (Pending p : batch) {
+                    if (!isLive(p.id(), p.fileId())) continue;   // replaced while queued
+                    todo.add(p);
+                    // The file name helps match questions that name the file
+                    texts.add(Path.of(p.path()).getFileName() + "\n" + p.text());
+                }
+                if (!todo.isEmpty()) {
+                    float[][] embeddings = embedder.embed(texts, RequestScheduler.Priority.BACKGROUND, this).get();
+                    long[] ids = new long[todo.size()], groups = new long[todo.size()];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = todo.get(i).id();
+                        groups[i] = todo.get(i).fileId();
+                    }
+                    if (!vectors.append(ids, groups, embeddings)) {
+                        cursor = 0;   // file started over: every chunk is embedded again
+                        continue;
+                    }
+                    embedded.addAndGet(ids.length);
+                }
+                cursor = batch.get(batch.size() - 1).id();
+                lastError = null;
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                String msg = String.valueOf(e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                if (!msg.equals(lastError)) System.out.println("Document embedding paused: " + msg);
+                lastError = msg;
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(BACKOFF_MS));
+            }
+            if (Thread.interrupted()) return;
+        }
+    }
+
+    private CompletableFuture<List<Pending>> pendingAfter(long afterId, int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<Pending> rows = new ArrayList<>(limit);
+            try (PreparedStatement ps = readConn.prepareStatement(
+                    "SELECT c.id, c.file_id, f.path, c.text FROM chunks c JOIN files f ON f.id = c.file_id " +
+                    "WHERE c.id > ? ORDER BY c.id LIMIT ?")) {
+                ps.setLong(1, afterId);
+                ps.setInt(2, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) rows.add(new Pending(rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getString(4)));
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            return rows;
+        }, reader);
+    }
+
+    // --- Small utils ---
+
+    private void countRows() throws SQLException {
+        files = (int) scalar("SELECT COUNT(*) FROM files");
+        chunks = (int) scalar("SELECT COUNT(*) FROM chunks");
+    }
+
+    private long scalar(String sql) throws SQLException {
+        try (Statement st = writeConn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (embedderThread != null) embedderThread.interrupt();
+        ingester.shutdownNow();
+        chunkers.shutdownNow();
+        reader.shutdownNow();
+        vectors.close();
+        try { readConn.close(); } catch (SQLException ignore) {}
+        try { writeConn.close(); } catch (SQLException ignore) {}
+    }
+}
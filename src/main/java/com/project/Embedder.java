@@ -0,0 +1,62 @@
+package com.project;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+// Batched /api/embed calls through the scheduler, so indexing never takes a slot a chat needs.
+// Shared by the history and document indexes.
+public class Embedder {
+
+    // Past this the embedding model truncates anyway
+    private static final int MAX_CHARS = 4000;
+
+    private final EndpointPool pool;
+    private final RequestScheduler scheduler;
+    private final GenerationTuner tuner;
+    private final String model;
+
+    public Embedder(EndpointPool pool, RequestScheduler scheduler, GenerationTuner tuner, String model) {
+        this.pool = pool;
+        this.scheduler = scheduler;
+        this.tuner = tuner;
+        this.model = model;
+    }
+
+    public String model() {
+        return model;
+    }
+
+    // Unit vectors for texts, in order; owner groups the work for round robin in the scheduler
+    public CompletableFuture<float[][]> embed(List<String> texts, RequestScheduler.Priority priority, Object owner) {
+        JSONArray input = new JSONArray();
+        for (String t : texts) input.put(t.length() > MAX_CHARS ? t.substring(0, MAX_CHARS) : t);
+        JSONObject body = new JSONObject()
+            .put("model", model)
+            .put("input", input)
+            .put("keep_alive", tuner.tune(model).keepAliveParam());
+        Function<URI, HttpRequest> request = base -> HttpRequest.newBuilder()
+            .uri(base.resolve("/api/embed"))
+            .header("Content-Type", "application/json")
+            .POST(BodyPublishers.ofString(body.toString()))
+            .build();
+        return scheduler.submit(model, priority, owner, permit -> pool.send(model, request)).thenApply(resp -> {
+            if (resp.statusCode() != 200) throw new IllegalStateException("embed HTTP " + resp.statusCode() + ": " + resp.body());
+            JSONArray embeddings = new JSONObject(resp.body()).getJSONArray("embeddings");
+            float[][] out = new float[embeddings.length()][];
+            for (int i = 0; i < out.length; i++) {
+                JSONArray e = embeddings.getJSONArray(i);
+                float[] v = new float[e.length()];
+                for (int j = 0; j < v.length; j++) v[j] = e.getFloat(j);
+                out[i] = VectorFile.normalize(v);
+            }
+            return out;
+        });
+    }
+}
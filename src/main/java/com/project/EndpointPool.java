@@ -0,0 +1,374 @@
+package com.project;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.json.JSONObject;
+
+// Several Ollama hosts behind one client. Each host keeps its own ModelResidency table;
+// /api/ps doubles as the health check. Requests go to the healthy host with the fewest
+// outstanding requests, counting a host without the model in memory as if it were busier
+// (a load costs seconds). A host that refuses the connection, answers 5xx or drops the
+// stream before the first token is marked down and the request moves to the next one.
+public class EndpointPool implements AutoCloseable {
+
+    private static final long HEALTH_SECONDS = 5;
+    private static final int COLD_PENALTY = 4;      // outstanding requests a model load is worth
+    private static final int LOADING_PENALTY = 1;
+
+    public static final class Endpoint {
+        private final URI base;
+        private final ModelResidency residency;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private volatile boolean healthy = true;
+        private volatile String lastError;
+
+        Endpoint(HttpClient httpClient, URI base) {
+            this.base = base;
+            this.residency = new ModelResidency(httpClient, base);
+        }
+
+        public URI base() { return base; }
+
+        public ModelResidency residency() { return residency; }
+
+        public boolean isHealthy() { return healthy; }
+
+        public int outstanding() { return outstanding.get(); }
+
+        void up() {
+            healthy = true;
+        }
+
+        void down(Throwable e) {
+            failures.incrementAndGet();
+            healthy = false;
+            lastError = String.valueOf(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+        }
+
+        @Override
+        public String toString() { return base.toString(); }
+    }
+
+    private final HttpClient httpClient;
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final AtomicInteger rotation = new AtomicInteger();
+    private final AtomicLong failovers = new AtomicLong();
+    private final ScheduledExecutorService health = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "endpoint-health");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public EndpointPool(HttpClient httpClient, List<URI> bases) {
+        if (bases.isEmpty()) throw new IllegalArgumentException("no Ollama endpoints");
+        this.httpClient = httpClient;
+        for (URI base : bases) endpoints.add(new Endpoint(httpClient, base));
+    }
+
+    public static EndpointPool fromSettings(HttpClient httpClient) {
+        List<URI> bases = new ArrayList<>();
+        for (String url : Settings.ollamaUrls()) bases.add(URI.create(url));
+        return new EndpointPool(httpClient, bases);
+    }
+
+    // See ModelResidency.setLoadOptions
+    public void setLoadOptions(Function<String, JSONObject> loadOptions, Function<String, Duration> keepAlive) {
+        for (Endpoint e : endpoints) e.residency.setLoadOptions(loadOptions, keepAlive);
+    }
+
+    public void start() {
+        for (Endpoint e : endpoints) e.residency.start();
+        health.scheduleWithFixedDelay(this::checkHealth, HEALTH_SECONDS, HEALTH_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public List<Endpoint> endpoints() {
+        return List.copyOf(endpoints);
+    }
+
+    // --- Routing ---
+
+    // Best host for this model, skipping `exclude`; null when every host was tried.
+    // Down hosts are only used when no healthy one is left (their state may be stale).
+    public Endpoint pick(String model, Set<Endpoint> exclude) {
+        Endpoint best = pickFrom(model, exclude, true);
+        return best != null ? best : pickFrom(model, exclude, false);
+    }
+
+    private Endpoint pickFrom(String model, Set<Endpoint> exclude, boolean healthyOnly) {
+        Endpoint best = null;
+        int bestScore = Integer.MAX_VALUE;
+        int n = endpoints.size();
+        int start = Math.floorMod(rotation.getAndIncrement(), n);   // ties rotate
+        for (int i = 0; i < n; i++) {
+            Endpoint e = endpoints.get((start + i) % n);
+            if (exclude.contains(e) || (healthyOnly && !e.healthy)) continue;
+            int score = e.outstanding.get();
+            if (!e.residency.isResident(model)) score += e.residency.isLoading(model) ? LOADING_PENALTY : COLD_PENALTY;
+            if (score < bestScore) {
+                best = e;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    // Loads the model on the host the next request will most likely go to
+    public CompletableFuture<Void> ensureLoaded(String model, Runnable onCold) {
+        return pick(model, Set.of()).residency.ensureLoaded(model, onCold);
+    }
+
+    public CompletableFuture<Boolean> prewarm(String model) {
+        return pick(model, Set.of()).residency.prewarm(model);
+    }
+
+    // --- Requests ---
+
+    // Opens a streamed request (request builds the HttpRequest for a host's base URI; it may be
+    // called once per host tried). Blocks until a host answers 200.
+    public Stream stream(String model, Function<URI, HttpRequest> request) throws IOException, InterruptedException {
+        return stream(model, request, null);
+    }
+
+    // Same, trying `first` (e.g. the host a scheduler slot was reserved on) before routing
+    public Stream stream(String model, Function<URI, HttpRequest> request, Endpoint first) throws IOException, InterruptedException {
+        Stream s = new Stream(model, request, first);
+        s.open();
+        return s;
+    }
+
+    // Non-streamed request; fails over on connection errors and 5xx. Cancelling the result aborts
+    // the exchange in flight first, so whatever waits on the result (a scheduler slot) is only
+    // released once the host is no longer working on it.
+    public CompletableFuture<HttpResponse<String>> send(String model, Function<URI, HttpRequest> request) {
+        Call call = new Call();
+        send(call, model, request, new HashSet<>(), null);
+        return call;
+    }
+
+    private static final class Call extends CompletableFuture<HttpResponse<String>> {
+        private volatile CompletableFuture<HttpResponse<String>> inflight;
+        private volatile boolean cancelling = false;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            cancelling = true;
+            CompletableFuture<HttpResponse<String>> f = inflight;
+            if (f != null) f.cancel(true);   // closes the connection: Ollama stops generating
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    private void send(Call call, String model, Function<URI, HttpRequest> request, Set<Endpoint> tried, Throwable lastError) {
+        Endpoint e = pick(model, tried);
+        if (e == null) {
+            call.completeExceptionally(lastError != null ? lastError : new IOException("no Ollama endpoint available"));
+            return;
+        }
+        tried.add(e);
+        e.outstanding.incrementAndGet();
+        e.requests.incrementAndGet();
+        CompletableFuture<HttpResponse<String>> attempt = httpClient.sendAsync(request.apply(e.base), HttpResponse.BodyHandlers.ofString());
+        call.inflight = attempt;
+        attempt.whenComplete((resp, err) -> {
+            e.outstanding.decrementAndGet();
+            if (call.cancelling) return;
+            if (err == null && resp.statusCode() < 500) {
+                e.up();
+                call.complete(resp);
+                return;
+            }
+            Throwable cause = err != null ? err : new IOException("HTTP " + resp.statusCode() + ": " + resp.body());
+            e.down(cause);
+            failovers.incrementAndGet();
+            send(call, model, request, tried, cause);
+        });
+        if (call.cancelling) attempt.cancel(true);   // cancelled between attempts
+    }
+
+    // A streamed reply that moves to another host if the connection to the current one fails
+    // before the host answered (first text, done or error chunk). After that a failure is final:
+    // the text can't be un-rendered. An empty reply, a stream the host ended early and a line
+    // that doesn't parse are answers, not dead hosts: they go to the caller as they are.
+    public final class Stream implements AutoCloseable {
+        private final String model;
+        private final Function<URI, HttpRequest> request;
+        private final Set<Endpoint> tried = new HashSet<>();
+        private volatile boolean closed = false;
+        private Endpoint endpoint;            // guarded by this; null when nothing is held
+        private InputStream body;             // guarded by this
+        private volatile Endpoint served;     // last host that answered, kept after close
+        private volatile CompletableFuture<HttpResponse<InputStream>> inflight;   // until headers arrive
+        private NdjsonStreamParser parser;
+        private boolean answered = false;
+        private int failovers = 0;
+
+        private Endpoint first;
+
+        private Stream(String model, Function<URI, HttpRequest> request, Endpoint first) {
+            this.model = model;
+            this.request = request;
+            this.first = first;
+        }
+
+        public Endpoint endpoint() { return served; }
+
+        public int failovers() { return failovers; }
+
+        // Same contract as NdjsonStreamParser.next
+        public boolean next(NdjsonStreamParser.Chunk chunk) throws IOException, InterruptedException {
+            while (true) {
+                try {
+                    boolean more = parser.next(chunk);
+                    if (more && (chunk.done || chunk.error != null || !chunk.content.isEmpty())) answered = true;
+                    return more;
+                } catch (IOException e) {
+                    if (answered || closed || e instanceof NdjsonStreamParser.FormatException) throw e;
+                    served.down(e);
+                    release();
+                    failovers++;
+                    EndpointPool.this.failovers.incrementAndGet();
+                    open();
+                }
+            }
+        }
+
+        private void open() throws IOException, InterruptedException {
+            IOException last = null;
+            while (!closed) {
+                Endpoint e = first != null && first.healthy ? first : pick(model, tried);
+                first = null;
+                if (e == null) throw last != null ? last : new IOException("no Ollama endpoint available");
+                tried.add(e);
+                e.outstanding.incrementAndGet();
+                e.requests.incrementAndGet();
+                try {
+                    HttpResponse<InputStream> resp = exchange(request.apply(e.base));
+                    if (resp.statusCode() == 200) {
+                        e.up();
+                        attach(e, resp.body());
+                        return;
+                    }
+                    String text;
+                    try (InputStream in = resp.body()) {
+                        text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                    }
+                    last = new IOException("HTTP " + resp.statusCode() + " from " + e.base + ": " + text);
+                    if (resp.statusCode() >= 500) e.down(last);
+                } catch (IOException ex) {
+                    last = ex;
+                    e.down(ex);
+                } catch (InterruptedException | CancellationException ex) {
+                    e.outstanding.decrementAndGet();
+                    if (ex instanceof InterruptedException ie) throw ie;
+                    throw new IOException("cancelled");
+                }
+                e.outstanding.decrementAndGet();
+                failovers++;
+                EndpointPool.this.failovers.incrementAndGet();
+            }
+            throw new IOException("cancelled");
+        }
+
+        // A send that close() can abort while the request is still being written or the
+        // headers awaited (a long prompt, or a vision request, can take a while before the
+        // first byte); an aborted exchange closes its connection, which stops Ollama
+        private HttpResponse<InputStream> exchange(HttpRequest req) throws IOException, InterruptedException {
+            CompletableFuture<HttpResponse<InputStream>> call = httpClient.sendAsync(req, HttpResponse.BodyHandlers.ofInputStream());
+            inflight = call;
+            if (closed) call.cancel(true);
+            try {
+                return call.get();
+            } catch (ExecutionException ex) {
+                throw ex.getCause() instanceof IOException io ? io : new IOException(ex.getCause());
+            } catch (InterruptedException ex) {
+                call.cancel(true);
+                throw ex;
+            } finally {
+                inflight = null;
+            }
+        }
+
+        private synchronized void attach(Endpoint e, InputStream in) throws IOException {
+            served = e;
+            parser = new NdjsonStreamParser(in);
+            if (closed) {   // cancelled while connecting
+                in.close();
+                e.outstanding.decrementAndGet();
+                return;
+            }
+            endpoint = e;
+            body = in;
+        }
+
+        private synchronized void release() {
+            if (endpoint == null) return;
+            try { body.close(); } catch (IOException ignore) {}
+            endpoint.outstanding.decrementAndGet();
+            endpoint = null;
+            body = null;
+        }
+
+        // Safe from any thread; a reader blocked in next() gets an IOException
+        @Override
+        public void close() {
+            closed = true;
+            CompletableFuture<HttpResponse<InputStream>> call = inflight;
+            if (call != null) call.cancel(true);
+            release();
+        }
+    }
+
+    // --- Health ---
+
+    private void checkHealth() {
+        for (Endpoint e : endpoints) {
+            e.residency.refresh().whenComplete((v, err) -> {
+                if (err == null) e.up();
+                else e.down(err);
+            });
+        }
+    }
+
+    public String stats() {
+        StringBuilder sb = new StringBuilder();
+        if (endpoints.size() > 1) sb.append(String.format("endpoints: %d failovers%n", failovers.get()));
+        for (Endpoint e : endpoints) {
+            if (endpoints.size() > 1) {
+                sb.append(String.format("%s %s: %d in flight, %d requests, %d failures%s%n", e.base, e.healthy ? "up" : "DOWN",
+                    e.outstanding.get(), e.requests.get(), e.failures.get(),
+                    e.healthy || e.lastError == null ? "" : " (" + e.lastError + ")"));
+            }
+            sb.append(e.residency.stats()).append('\n');
+        }
+        return sb.toString().stripTrailing();
+    }
+
+    @Override
+    public void close() {
+        health.shutdownNow();
+        for (Endpoint e : endpoints) e.residency.close();
+    }
+}
@@ -0,0 +1,407 @@
+package com.project;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+// Stand-in for Ollama on the JDK's built-in HTTP server, for reproducing latency/throughput
+// behaviour without a GPU. Speaks /api/generate, /api/chat (streamed NDJSON or single JSON),
+// /api/embed, /api/ps, /api/tags and /api/version. Token pacing, first-token delay, model-load
+// delay and error injection (HTTP 500s, streams that stop before their done chunk, replies with
+// no tokens) are configurable; NDJSON fixtures can be replayed instead of synthetic tokens.
+//
+// Run:  ./run.sh com.project.FakeOllamaServer port=11435 token_rate=80 load_ms=3000 error_rate=0.05
+// Then: XAVIGPT_OLLAMA_URL=http://localhost:11435 ./run.sh com.project.Main
+public class FakeOllamaServer implements AutoCloseable {
+
+    public record Config(
+        int port,
+        double tokenRate,          // tokens per second while generating
+        long firstTokenDelayMs,    // prefill stand-in, paid on every request
+        long loadDelayMs,          // paid when the model isn't resident
+        double errorRate,          // fraction of requests answered with HTTP 500
+        double midStreamErrorRate, // fraction of streams that end after a few tokens, with no done chunk
+        double emptyReplyRate,     // fraction of replies that finish without a single token
+        int tokens,                // synthetic reply length
+        Path fixtures) {           // directory of <model>.ndjson / *.ndjson to replay, or null
+
+        public static Config fromSettings() {
+            String fixtures = Settings.get("xavigpt.fake.fixtures", "");
+            return new Config(
+                Settings.getInt("xavigpt.fake.port", 11435),
+                Double.parseDouble(Settings.get("xavigpt.fake.token_rate", "50")),
+                Settings.getLong("xavigpt.fake.first_token_ms", 200),
+                Settings.getLong("xavigpt.fake.load_ms", 2000),
+                Double.parseDouble(Settings.get("xavigpt.fake.error_rate", "0")),
+                Double.parseDouble(Settings.get("xavigpt.fake.mid_stream_error_rate", "0")),
+                Double.parseDouble(Settings.get("xavigpt.fake.empty_reply_rate", "0")),
+                Settings.getInt("xavigpt.fake.tokens", 200),
+                fixtures.isEmpty() ? null : Path.of(fixtures));
+        }
+    }
+
+    private static final String[] WORDS = {
+        "the", "model", "is", "a", "stand-in", "for", "Ollama", "and", "streams", "tokens",
+        "at", "a", "configurable", "rate", "so", "latency", "can", "be", "measured", "offline."
+    };
+
+    private static final int EMBED_DIM = 256;
+    private static final int CUT_AFTER = 5;   // chunks sent before a mid-stream cut
+
+    private final Config config;
+    private final HttpServer server;
+    private final ExecutorService pool = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "fake-ollama");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<String, Instant> loaded = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> fixtureCache = new ConcurrentHashMap<>();
+
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+    // Client sockets seen; requests minus these were served on a reused connection
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+
+    public FakeOllamaServer(Config config) throws IOException {
+        this.config = config;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", config.port()), 64);
+        server.setExecutor(pool);
+        server.createContext("/api/generate", ex -> handle(ex, this::generate));
+        server.createContext("/api/chat", ex -> handle(ex, this::chat));
+        server.createContext("/api/embed", ex -> handle(ex, this::embed));
+        server.createContext("/api/ps", ex -> handle(ex, this::ps));
+        server.createContext("/api/tags", ex -> handle(ex, this::tags));
+        server.createContext("/api/version", ex -> handle(ex, e -> sendJson(e, 200, new JSONObject().put("version", "0.0.0-fake"))));
+    }
+
+    public FakeOllamaServer start() {
+        server.start();
+        return this;
+    }
+
+    // Actual port (config port 0 picks a free one)
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + port();
+    }
+
+    public int activeStreams() { return activeStreams.get(); }
+
+    public long disconnects() { return disconnects.get(); }
+
+    public long requests() { return requests.get(); }
+
+    public int connections() { return connections.size(); }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        pool.shutdownNow();
+    }
+
+    public static void main(String[] args) throws IOException {
+        // key=value arguments become xavigpt.fake.* properties
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) System.setProperty("xavigpt.fake." + arg.substring(0, eq).replace('-', '_'), arg.substring(eq + 1));
+        }
+        Config config = Config.fromSettings();
+        FakeOllamaServer fake = new FakeOllamaServer(config).start();
+        System.out.println("Fake Ollama listening on " + fake.baseUrl() + " " + config);
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+            System.out.printf("%d requests on %d connections, %d client disconnects%n",
+                fake.requests.get(), fake.connections.size(), fake.disconnects.get())));
+    }
+
+    // --- Handlers ---
+
+    private interface Handler {
+        void handle(HttpExchange ex) throws IOException;
+    }
+
+    private void handle(HttpExchange ex, Handler h) {
+        requests.incrementAndGet();
+        connections.add(ex.getRemoteAddress());
+        try (ex) {
+            h.handle(ex);
+        } catch (IOException e) {
+            disconnects.incrementAndGet();   // client went away mid-response
+        } catch (Exception e) {
+            try { sendJson(ex, 500, new JSONObject().put("error", String.valueOf(e.getMessage()))); } catch (IOException ignore) {}
+        }
+    }
+
+    private void generate(HttpExchange ex) throws IOException {
+        JSONObject req = readJson(ex);
+        String prompt = req.optString("prompt", "");
+        generation(ex, req, prompt.length(), false, prompt.isEmpty());
+    }
+
+    private void chat(HttpExchange ex) throws IOException {
+        JSONObject req = readJson(ex);
+        JSONArray messages = req.optJSONArray("messages");
+        int promptChars = 0;
+        if (messages != null) {
+            for (int i = 0; i < messages.length(); i++) promptChars += messages.getJSONObject(i).optString("content", "").length();
+        }
+        generation(ex, req, promptChars, true, messages == null || messages.isEmpty());
+    }
+
+    // Hashed bag of words, L2-normalized: texts sharing words come out similar, which is all
+    // a search test needs. Input is one string or an array (batch).
+    private void embed(HttpExchange ex) throws IOException {
+        JSONObject req = readJson(ex);
+        String model = ModelResidency.normalize(req.optString("model", "fake"));
+        long start = System.nanoTime();
+        long loadNs = ensureLoaded(model, req.opt("keep_alive"));
+        JSONArray inputs = req.optJSONArray("input");
+        if (inputs == null) inputs = new JSONArray().put(req.optString("input", ""));
+
+        JSONArray embeddings = new JSONArray();
+        for (int i = 0; i < inputs.length(); i++) {
+            float[] v = new float[EMBED_DIM];
+            for (String word : inputs.getString(i).toLowerCase().split("\\W+")) {
+                if (!word.isEmpty()) v[Math.floorMod(word.hashCode(), EMBED_DIM)] += 1;
+            }
+            double norm = 0;
+            for (float x : v) norm += x * x;
+            JSONArray out = new JSONArray();
+            for (float x : v) out.put(norm == 0 ? 0 : x / Math.sqrt(norm));
+            embeddings.put(out);
+        }
+        sendJson(ex, 200, new JSONObject().put("model", model).put("embeddings", embeddings)
+            .put("load_duration", loadNs).put("total_duration", System.nanoTime() - start));
+    }
+
+    private void generation(HttpExchange ex, JSONObject req, int promptChars, boolean chat, boolean loadOnly) throws IOException {
+        String model = ModelResidency.normalize(req.optString("model", "fake"));
+        long start = System.nanoTime();
+
+        if (ThreadLocalRandom.current().nextDouble() < config.errorRate()) {
+            sendJson(ex, 500, new JSONObject().put("error", "injected failure"));
+            return;
+        }
+
+        long loadNs = ensureLoaded(model, req.opt("keep_alive"));
+        if (loadOnly) {
+            JSONObject done = new JSONObject().put("model", model).put("created_at", now()).put("done", true)
+                .put("done_reason", "load").put("load_duration", loadNs).put("total_duration", System.nanoTime() - start);
+            if (chat) done.put("message", new JSONObject().put("role", "assistant").put("content", ""));
+            else done.put("response", "");
+            sendJson(ex, 200, done);
+            return;
+        }
+
+        sleep(config.firstTokenDelayMs());
+        long promptEvalNs = System.nanoTime() - start - loadNs;
+        List<String> tokens = ThreadLocalRandom.current().nextDouble() < config.emptyReplyRate() ? List.of() : replyTokens(model);
+        boolean stream = req.optBoolean("stream", true);
+        boolean cut = stream && ThreadLocalRandom.current().nextDouble() < config.midStreamErrorRate();
+        long pauseNanos = config.tokenRate() > 0 ? (long) (1_000_000_000L / config.tokenRate()) : 0;
+
+        if (!stream) {
+            long evalStart = System.nanoTime();
+            sleepNanos(pauseNanos * tokens.size());
+            JSONObject out = finalChunk(model, chat, start, loadNs, promptChars, promptEvalNs, tokens.size(), System.nanoTime() - evalStart);
+            String text = String.join("", tokens);
+            if (chat) out.put("message", new JSONObject().put("role", "assistant").put("content", text));
+            else out.put("response", text);
+            sendJson(ex, 200, out);
+            return;
+        }
+
+        ex.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        ex.sendResponseHeaders(200, 0);   // chunked
+        activeStreams.incrementAndGet();
+        try {
+            OutputStream out = ex.getResponseBody();
+            long evalStart = System.nanoTime();
+            long nextAt = evalStart;
+            int sent = 0;
+            for (String token : tokens) {
+                JSONObject line = new JSONObject().put("model", model).put("created_at", now()).put("done", false);
+                if (chat) line.put("message", new JSONObject().put("role", "assistant").put("content", token));
+                else line.put("response", token);
+                out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();   // a vanished client surfaces here as IOException: generation stops
+                sent++;
+                if (cut && sent == Math.min(CUT_AFTER, tokens.size())) return;   // body ends cleanly, never done
+                nextAt += pauseNanos;
+                sleepNanos(nextAt - System.nanoTime());
+            }
+            JSONObject done = finalChunk(model, chat, start, loadNs, promptChars, promptEvalNs, sent, System.nanoTime() - evalStart);
+            if (chat) done.put("message", new JSONObject().put("role", "assistant").put("content", ""));
+            else done.put("response", "");
+            out.write((done + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } finally {
+            activeStreams.decrementAndGet();
+        }
+    }
+
+    private void ps(HttpExchange ex) throws IOException {
+        JSONArray models = new JSONArray();
+        Instant now = Instant.now();
+        loaded.entrySet().removeIf(e -> e.getValue().isBefore(now));
+        for (Map.Entry<String, Instant> e : loaded.entrySet()) {
+            models.put(new JSONObject()
+                .put("name", e.getKey())
+                .put("model", e.getKey())
+                .put("size", 1L << 30)
+                .put("size_vram", 1L << 30)
+                .put("expires_at", OffsetDateTime.ofInstant(e.getValue(), ZoneOffset.UTC).toString()));
+        }
+        sendJson(ex, 200, new JSONObject().put("models", models));
+    }
+
+    private void tags(HttpExchange ex) throws IOException {
+        JSONArray models = new JSONArray();
+        for (String name : new String[] { "gemma3:1b", "llava-phi3:latest" }) {
+            models.put(new JSONObject().put("name", name).put("model", name).put("size", 1L << 30));
+        }
+        sendJson(ex, 200, new JSONObject().put("models", models));
+    }
+
+    // --- Helpers ---
+
+    // Returns the simulated load time in ns (0 when already resident)
+    private long ensureLoaded(String model, Object keepAlive) {
+        Duration keep = parseKeepAlive(keepAlive);
+        Instant expires = loaded.get(model);
+        long loadNs = 0;
+        if (expires == null || expires.isBefore(Instant.now())) {
+            long t = System.nanoTime();
+            sleep(config.loadDelayMs());
+            loadNs = System.nanoTime() - t;
+        }
+        if (keep.isZero()) loaded.remove(model);
+        else loaded.put(model, Instant.now().plus(keep));
+        return loadNs;
+    }
+
+    private static Duration parseKeepAlive(Object v) {
+        if (v == null) return Duration.ofMinutes(5);
+        if (v instanceof Number n) return n.longValue() < 0 ? Duration.ofDays(365) : Duration.ofSeconds(n.longValue());
+        String s = v.toString().trim();
+        try {
+            if (s.endsWith("ms")) return Duration.ofMillis(Long.parseLong(s.substring(0, s.length() - 2)));
+            if (s.endsWith("s")) return Duration.ofSeconds(Long.parseLong(s.substring(0, s.length() - 1)));
+            if (s.endsWith("m")) return Duration.ofMinutes(Long.parseLong(s.substring(0, s.length() - 1)));
+            if (s.endsWith("h")) return Duration.ofHours(Long.parseLong(s.substring(0, s.length() - 1)));
+            long secs = Long.parseLong(s);
+            return secs < 0 ? Duration.ofDays(365) : Duration.ofSeconds(secs);
+        } catch (NumberFormatException e) {
+            return Duration.ofMinutes(5);
+        }
+    }
+
+    private List<String> replyTokens(String model) {
+        List<String> fixture = fixtureTokens(model);
+        if (fixture != null) return fixture;
+        List<String> tokens = new ArrayList<>(config.tokens());
+        for (int i = 0; i < config.tokens(); i++) tokens.add((i == 0 ? "" : " ") + WORDS[i % WORDS.length]);
+        return tokens;
+    }
+
+    // Tokens from <fixtures>/<model>.ndjson (":" replaced by "_"), else the first *.ndjson there
+    private List<String> fixtureTokens(String model) {
+        if (config.fixtures() == null) return null;
+        return fixtureCache.computeIfAbsent(model, m -> {
+            try {
+                Path file = config.fixtures().resolve(m.replace(':', '_') + ".ndjson");
+                if (!Files.exists(file)) {
+                    try (var files = Files.list(config.fixtures())) {
+                        file = files.filter(f -> f.toString().endsWith(".ndjson")).sorted().findFirst().orElse(null);
+                    }
+                }
+                if (file == null) return null;
+                List<String> tokens = new ArrayList<>();
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    if (line.isBlank()) continue;
+                    JSONObject o = new JSONObject(line);
+                    JSONObject msg = o.optJSONObject("message");
+                    String t = msg != null ? msg.optString("content", "") : o.optString("response", "");
+                    if (!t.isEmpty()) tokens.add(t);
+                }
+                return tokens;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private static JSONObject finalChunk(String model, boolean chat, long start, long loadNs, int promptChars,
+                                         long promptEvalNs, int evalCount, long evalNs) {
+        return new JSONObject()
+            .put("model", model)
+            .put("created_at", now())
+            .put("done", true)
+            .put("done_reason", "stop")
+            .put("total_duration", System.nanoTime() - start)
+            .put("load_duration", loadNs)
+            .put("prompt_eval_count", Math.max(1, promptChars / 4))
+            .put("prompt_eval_duration", promptEvalNs)
+            .put("eval_count", evalCount)
+            .put("eval_duration", evalNs);
+    }
+
+    private static JSONObject readJson(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            byte[] body = in.readAllBytes();
+            return body.length == 0 ? new JSONObject() : new JSONObject(new String(body, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void sendJson(HttpExchange ex, int status, JSONObject body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, bytes.length);
+        ex.getResponseBody().write(bytes);
+    }
+
+    private static String now() {
+        return OffsetDateTime.now(ZoneOffset.UTC).toString();
+    }
+
+    private static void sleep(long ms) {
+        sleepNanos(ms * 1_000_000);
+    }
+
+    private static void sleepNanos(long nanos) {
+        if (nanos <= 0) return;
+        try {
+            Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.project;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// One request of a ChatSession, from send to idle. It owns whatever is in flight for that request
+// (scheduler slot, HTTP exchange, stream, reader task), so cancel() can release all of it from the
+// FX thread while the reader is blocked, and anything attached after a cancel is released on the
+// spot. Readers and callbacks carry their Generation; the session drops what comes from one that
+// is no longer current, so late tokens of an aborted request never reach the next one.
+final class Generation {
+
+    private static final AtomicLong IDS = new AtomicLong();
+
+    final long id = IDS.incrementAndGet();
+    final String model;
+    final boolean userTurn;                  // added a user turn to the conversation
+    final long startNanos = System.nanoTime();
+    volatile String cacheKey;
+    volatile Duration keepAlive;
+
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private volatile long cancelNanos;
+    private volatile CompletableFuture<?> pending;
+    private volatile EndpointPool.Stream stream;
+    private volatile Future<?> task;
+    private volatile StreamRenderer renderer;
+    private volatile ChatMessage reply;
+
+    Generation(String model, boolean userTurn) {
+        this.model = model;
+        this.userTurn = userTurn;
+    }
+
+    // --- Attachments (any thread) ---
+
+    // A scheduler slot or HTTP call being waited on
+    void pending(CompletableFuture<?> future) {
+        pending = future;
+        if (cancelled.get()) future.cancel(true);
+    }
+
+    void stream(EndpointPool.Stream s) {
+        stream = s;
+        if (cancelled.get()) s.close();
+    }
+
+    void task(Future<?> f) {
+        task = f;
+        if (cancelled.get()) f.cancel(true);
+    }
+
+    // The bubble being streamed into; cancel() settles it
+    void reply(ChatMessage message, StreamRenderer r) {
+        reply = message;
+        renderer = r;
+        if (cancelled.get()) r.discard(() -> {});
+    }
+
+    ChatMessage reply() { return reply; }
+
+    // --- Lifecycle ---
+
+    boolean isCancelled() { return cancelled.get(); }
+
+    // Returns false if already cancelled. Leaving the scheduler queue and closing the stream make
+    // the reader's next() fail at once; closing the connection is also what makes Ollama stop
+    // generating and free its slot (it has no abort call).
+    boolean cancel() {
+        if (!cancelled.compareAndSet(false, true)) return false;
+        cancelNanos = System.nanoTime();
+        CompletableFuture<?> p = pending;
+        if (p != null) p.cancel(true);
+        EndpointPool.Stream s = stream;
+        if (s != null) s.close();
+        Future<?> t = task;
+        if (t != null) t.cancel(true);
+        StreamRenderer r = renderer;
+        if (r != null) r.discard(() -> {});
+        return true;
+    }
+
+    long elapsedMs() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    // Since cancel(), -1 if not cancelled
+    long sinceCancelMs() {
+        return cancelled.get() ? (System.nanoTime() - cancelNanos) / 1_000_000 : -1;
+    }
+}
@@ -0,0 +1,29 @@
+package com.project;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// One finished generation, for JFR recordings (jcmd <pid> JFR.start, or -XX:StartFlightRecording)
+@Name("com.project.Generation")
+@Label("Generation")
+@Category({ "XaviGPT", "Ollama" })
+@Description("Client and server timings of one streamed generation")
+@StackTrace(false)
+public class GenerationEvent extends Event {
+
+    @Label("Model") public String model;
+    @Label("Outcome") public String outcome;
+    @Label("Time To First Token") @Timespan(Timespan.MILLISECONDS) public long ttft;
+    @Label("End To End") @Timespan(Timespan.MILLISECONDS) public long total;
+    @Label("Load Duration") @Timespan(Timespan.MILLISECONDS) public long load;
+    @Label("Prompt Tokens") public long promptTokens;
+    @Label("Prompt Eval Duration") @Timespan(Timespan.MILLISECONDS) public long promptEval;
+    @Label("Generated Tokens") public long evalTokens;
+    @Label("Eval Duration") @Timespan(Timespan.MILLISECONDS) public long eval;
+    @Label("Tokens Per Second") public double tokensPerSecond;
+}
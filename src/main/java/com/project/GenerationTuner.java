@@ -0,0 +1,224 @@
+package com.project;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONObject;
+
+// Picks generation options per model so a reply fits in a target time without running the host
+// out of memory: num_ctx from free RAM, num_predict from the measured decode speed, num_thread on
+// CPU-only hosts, keep_alive from how often the model is used. num_ctx is fixed the first time a
+// model is tuned and num_thread once /api/ps has shown whether the host has a GPU (Ollama reloads a
+// model whenever either changes, so that costs at most one reload); num_predict and keep_alive
+// follow the measurements on every request.
+//
+// Free RAM and cores are this machine's, so the choices based on them are only made when every
+// endpoint is on loopback. With a remote host in the pool a request may run there, and num_ctx
+// and num_thread are left to Ollama (keep_alive then only follows use).
+//
+// Any value can be pinned with xavigpt.tune.<key>, or for one model with
+// xavigpt.tune.<model>.<key> where the model name has ':' '.' '-' as '_'
+// (e.g. -Dxavigpt.tune.llava_phi3_latest.num_ctx=4096). The stats overlay shows what was picked.
+public class GenerationTuner {
+
+    public record Tuning(int numCtx, int numPredict, int numThread, Duration keepAlive, String reason) {
+
+        // Request options; num_ctx and num_thread are left to Ollama unless picked
+        public JSONObject toOptions() {
+            JSONObject o = new JSONObject().put("num_predict", numPredict);
+            if (numCtx > 0) o.put("num_ctx", numCtx);
+            if (numThread > 0) o.put("num_thread", numThread);
+            return o;
+        }
+
+        // Context the prompt and reply must fit in; Ollama's default when num_ctx isn't sent
+        public int contextTokens() {
+            return numCtx > 0 ? numCtx : OLLAMA_CTX;
+        }
+
+        public String keepAliveParam() {
+            return keepAlive.toMinutes() + "m";
+        }
+    }
+
+    // settled: num_thread is final; until then nothing was loaded to tell a GPU host from a CPU one
+    private record Fixed(int numCtx, int numThread, String reason, boolean settled) {}
+
+    private static final int OLLAMA_CTX = 2048;                // num_ctx Ollama uses when none is sent
+    private static final int MIN_CTX = 2048;
+    private static final int MAX_CTX = 8192;
+    private static final double KV_SHARE = 0.25;              // of free RAM the KV cache may take
+    private static final long DEFAULT_KV_BYTES = 256L << 10;  // per context token, unknown models
+    // fp16 K+V per token: layers x KV heads x head dim x 2 x 2 bytes
+    private static final Map<String, Long> KV_BYTES = Map.of(
+        "gemma3:1b", 26L * 1 * 256 * 4,
+        "llava-phi3:latest", 32L * 32 * 96 * 4);
+    private static final int MIN_PREDICT = 128;
+    private static final int MAX_PREDICT = 2048;
+    private static final Duration BUSY_WINDOW = Duration.ofMinutes(30);
+    private static final int BUSY_USES = 3;
+
+    private final MetricsRegistry metrics;
+    private final EndpointPool pool;
+    private final Map<String, Fixed> fixed = new ConcurrentHashMap<>();
+    private final Map<String, Tuning> last = new ConcurrentHashMap<>();
+    private final Map<String, ArrayDeque<Instant>> uses = new ConcurrentHashMap<>();
+
+    public GenerationTuner(MetricsRegistry metrics, EndpointPool pool) {
+        this.metrics = metrics;
+        this.pool = pool;
+    }
+
+    // Options for the next request to this model; counts as a use
+    public Tuning tune(String model) {
+        String name = ModelResidency.normalize(model);
+        Fixed f = fixed(name);
+        int numPredict = numPredict(model, name, f.numCtx() > 0 ? f.numCtx() : OLLAMA_CTX);
+        Duration keepAlive = keepAlive(name, true);
+        Tuning t = new Tuning(f.numCtx(), numPredict, f.numThread(), keepAlive, f.reason());
+        last.put(name, t);
+        return t;
+    }
+
+    // keep_alive the model's requests carry now, for ModelResidency loads and re-warms; not a use
+    public Duration keepAliveFor(String model) {
+        return keepAlive(ModelResidency.normalize(model), false);
+    }
+
+    // The load-time subset, for ModelResidency preloads (see EndpointPool.setLoadOptions)
+    public JSONObject loadOptions(String model) {
+        Fixed f = fixed(ModelResidency.normalize(model));
+        JSONObject o = new JSONObject();
+        if (f.numCtx() > 0) o.put("num_ctx", f.numCtx());
+        if (f.numThread() > 0) o.put("num_thread", f.numThread());
+        return o;
+    }
+
+    public String stats() {
+        if (last.isEmpty()) return "tuning: nothing tuned yet (target " + Settings.tuneTargetMillis() + " ms)";
+        StringBuilder sb = new StringBuilder("tuning (target " + Settings.tuneTargetMillis() + " ms):");
+        for (Map.Entry<String, Tuning> e : new TreeMap<>(last).entrySet()) {
+            Tuning t = e.getValue();
+            sb.append(String.format("%n  %s: num_ctx %s, num_predict %d, num_thread %s, keep_alive %s (%s)",
+                e.getKey(), t.numCtx() > 0 ? t.numCtx() : "auto", t.numPredict(), t.numThread() > 0 ? t.numThread() : "auto",
+                t.keepAliveParam(), t.reason()));
+        }
+        return sb.toString();
+    }
+
+    // --- Internals ---
+
+    // The first call after /api/ps lists a loaded model settles num_thread, once per model
+    private Fixed fixed(String name) {
+        Fixed f = fixed.computeIfAbsent(name, this::fix);
+        if (f.settled() || cpuOnly() == null) return f;
+        return fixed.compute(name, (k, old) -> old.settled() ? old : withThreads(k, old.numCtx(), old.reason()));
+    }
+
+    private Fixed fix(String name) {
+        String reason;
+        int numCtx = override(name, "num_ctx");
+        if (numCtx > 0) {
+            reason = "num_ctx pinned";
+        } else if (!localOnly()) {
+            numCtx = 0;
+            reason = "remote host, Ollama defaults";
+        } else {
+            long free = ModelResidency.freePhysicalMemory();
+            long perToken = KV_BYTES.getOrDefault(name, DEFAULT_KV_BYTES);
+            numCtx = MIN_CTX;
+            if (free > 0) {
+                while (numCtx < MAX_CTX && (long) (numCtx * 2) * perToken <= free * KV_SHARE) numCtx *= 2;
+                reason = String.format("%d MB free", free >> 20);
+            } else {
+                reason = "free memory unknown";
+            }
+        }
+
+        return withThreads(name, numCtx, reason);
+    }
+
+    private Fixed withThreads(String name, int numCtx, String reason) {
+        int numThread = override(name, "num_thread");
+        if (numThread > 0 || !localOnly()) return new Fixed(numCtx, Math.max(0, numThread), reason, true);
+        Boolean cpu = cpuOnly();
+        if (cpu == null) return new Fixed(numCtx, 0, reason, false);
+        if (!cpu) return new Fixed(numCtx, 0, reason, true);
+        // llama.cpp scales with physical cores, not SMT threads; leave one for the UI
+        numThread = Math.max(1, Runtime.getRuntime().availableProcessors() / 2 - 1);
+        return new Fixed(numCtx, numThread, reason + ", CPU only", true);
+    }
+
+    // Enough tokens to finish within the target at the measured decode speed (p50 TTFT is
+    // spent before the first token). Without history, the old fixed limits.
+    private int numPredict(String model, String name, int numCtx) {
+        int pinned = override(name, "num_predict");
+        if (pinned > 0) return pinned;
+        double tokensPerSecond = metrics.percentile(model, "tokens_per_second", 0.5);
+        double ttft = metrics.percentile(model, "ttft", 0.5);
+        int n;
+        if (tokensPerSecond <= 0) {
+            n = name.equals(ModelResidency.normalize(Controller.VISION_MODEL)) ? 256 : 512;
+        } else {
+            double seconds = (Settings.tuneTargetMillis() - Math.max(0, ttft)) / 1000.0;
+            n = (int) (seconds * tokensPerSecond) / 64 * 64;
+        }
+        return Math.max(MIN_PREDICT, Math.min(Math.min(MAX_PREDICT, numCtx / 2), n));
+    }
+
+    // Models in regular use stay loaded longer; when RAM is short they give it back sooner
+    private Duration keepAlive(String name, boolean use) {
+        int pinned = override(name, "keep_alive_minutes");
+        if (pinned > 0) return Duration.ofMinutes(pinned);
+
+        Instant now = Instant.now();
+        ArrayDeque<Instant> q = uses.computeIfAbsent(name, k -> new ArrayDeque<>());
+        int recent;
+        synchronized (q) {
+            if (use) q.add(now);
+            while (!q.isEmpty() && q.peek().isBefore(now.minus(BUSY_WINDOW))) q.poll();
+            recent = q.size();
+        }
+        long free = localOnly() ? ModelResidency.freePhysicalMemory() : -1;
+        if (free > 0 && free < residentSize(name)) return Duration.ofMinutes(3);
+        return recent >= BUSY_USES ? Duration.ofMinutes(30) : Duration.ofMinutes(10);
+    }
+
+    private long residentSize(String name) {
+        for (EndpointPool.Endpoint e : pool.endpoints()) {
+            for (ModelResidency.Resident r : e.residency().residents()) {
+                if (r.name().equals(name)) return r.size();
+            }
+        }
+        return 0;
+    }
+
+    // Every endpoint is on this machine, so its free RAM and cores are the server's
+    private boolean localOnly() {
+        for (EndpointPool.Endpoint e : pool.endpoints()) {
+            if (!e.residency().isLocal()) return false;
+        }
+        return true;
+    }
+
+    // True when something is loaded and none of it is in VRAM; null while nothing is loaded
+    private Boolean cpuOnly() {
+        boolean any = false;
+        for (EndpointPool.Endpoint e : pool.endpoints()) {
+            for (ModelResidency.Resident r : e.residency().residents()) {
+                if (r.sizeVram() > 0) return false;
+                any |= r.size() > 0;
+            }
+        }
+        return any ? true : null;
+    }
+
+    private static int override(String name, String key) {
+        int v = Settings.getInt("xavigpt.tune." + name.replaceAll("[:.\\-]", "_") + "." + key, -1);
+        return v > 0 ? v : Settings.getInt("xavigpt.tune." + key, -1);
+    }
+}
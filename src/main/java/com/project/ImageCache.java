@@ -0,0 +1,267 @@
+package com.project;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+// Prepared images by content: the downscaled bytes and their Base64 form, keyed by the payload's
+// SHA-256, in an LRU bounded by bytes. Attaching a file that was attached before (same path,
+// size and mtime) or picking a thumbnail finds the payload without reading or encoding anything.
+// With spilling on, entries pushed out of memory are written to data/images (<digest>.img plus
+// a small <digest>.thumb.jpg) and read back on demand; thumbnails stay listed across restarts.
+// Entries are always heap bytes, never a mapping of the user's file.
+public class ImageCache {
+
+    // One cached image; the thumbnail is a small JPEG for the picker strip (null if not decodable)
+    public record Entry(String digest, String name, int width, int height, byte[] thumbnail) {}
+
+    private static final int THUMB_EDGE = 48;
+    private static final int MAX_LISTED = 32;
+    private static final int BASE64_SHARE = 4;   // payloads over memory limit / 4 stay streamed (sent originals)
+
+    private final long memoryLimit;
+    private final long diskLimit;
+    private final Path spillDir;                 // null: no spilling
+
+    // digest → payload, least recently used first
+    private final LinkedHashMap<String, ImagePayload> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes = 0;
+    // Everything pickable, in memory or spilled, newest last
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    // "path|size|mtime|maxEdge" → digest
+    private final Map<String, String> aliases = new ConcurrentHashMap<>();
+    private volatile Runnable onChange = () -> {};
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ImageCache(long memoryLimit, long diskLimit, Path spillDir) {
+        this.memoryLimit = memoryLimit;
+        this.diskLimit = diskLimit;
+        this.spillDir = spillDir;
+        if (spillDir != null) loadSpilled();
+    }
+
+    public static ImageCache fromSettings() {
+        return new ImageCache(Settings.imageCacheMemoryBytes(), Settings.imageCacheDiskBytes(),
+            Settings.imageCacheSpill() ? Path.of("data/images") : null);
+    }
+
+    // Any thread; called after an image is added
+    public void setOnChange(Runnable onChange) {
+        this.onChange = onChange;
+    }
+
+    // --- Lookups ---
+
+    // Off the FX thread: the prepared payload for a file, reading and downscaling it only if
+    // this exact file version was never prepared at this size
+    public ImagePayload load(Path file, int maxEdge) throws IOException {
+        String alias = file.toAbsolutePath() + "|" + Files.size(file) + "|" + Files.getLastModifiedTime(file).toMillis() + "|" + maxEdge;
+        String digest = aliases.get(alias);
+        if (digest != null) {
+            ImagePayload cached = get(digest).join();
+            if (cached != null) return cached;
+        }
+        misses.incrementAndGet();
+        ImagePayload image = ImagePayload.fromFile(file, maxEdge).onHeap();
+        put(image, file.getFileName().toString());
+        aliases.put(alias, image.digest());
+        return image;
+    }
+
+    // Completes at once when the payload is in memory; a spilled one is read on the common pool.
+    // Null when the image is no longer cached.
+    public CompletableFuture<ImagePayload> get(String digest) {
+        synchronized (this) {
+            ImagePayload image = memory.get(digest);
+            if (image != null) {
+                memoryHits.incrementAndGet();
+                return CompletableFuture.completedFuture(image);
+            }
+            if (spillDir == null || !entries.containsKey(digest)) return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.supplyAsync(() -> readSpilled(digest));
+    }
+
+    // Newest first, for the picker
+    public synchronized List<Entry> entries() {
+        List<Entry> list = new ArrayList<>(entries.values());
+        Collections.reverse(list);
+        return list.size() > MAX_LISTED ? list.subList(0, MAX_LISTED) : list;
+    }
+
+    public synchronized String stats() {
+        return String.format("images: %d cached (%d in memory, %d KB), %d memory hits, %d disk hits, %d prepared",
+            entries.size(), memory.size(), memoryBytes / 1024, memoryHits.get(), diskHits.get(), misses.get());
+    }
+
+    // --- Inserts ---
+
+    private void put(ImagePayload image, String name) {
+        if (image.size() <= memoryLimit / BASE64_SHARE) image.base64();   // paid once, here, off the FX thread
+        Entry known;
+        synchronized (this) {
+            known = entries.get(image.digest());
+        }
+        byte[] thumb = known != null && known.thumbnail() != null ? known.thumbnail() : thumbnail(image);
+        Entry entry = new Entry(image.digest(), name, image.width(), image.height(), thumb);
+        // One image over the whole limit never sits in memory: it goes straight to the spill
+        // folder, or isn't cached at all without one
+        boolean fits = footprint(image) <= memoryLimit;
+        List<Map.Entry<String, ImagePayload>> evicted = new ArrayList<>();
+        if (!fits) evicted.add(Map.entry(image.digest(), image));
+        synchronized (this) {
+            entries.remove(entry.digest());
+            if (fits || spillDir != null) entries.put(entry.digest(), entry);
+            if (fits && memory.put(image.digest(), image) == null) memoryBytes += footprint(image);
+            var it = memory.entrySet().iterator();
+            while (memoryBytes > memoryLimit && memory.size() > 1 && it.hasNext()) {
+                Map.Entry<String, ImagePayload> e = it.next();
+                memoryBytes -= footprint(e.getValue());
+                evicted.add(Map.entry(e.getKey(), e.getValue()));
+                it.remove();
+            }
+            for (Map.Entry<String, ImagePayload> e : evicted) {
+                if (spillDir == null) entries.remove(e.getKey());
+            }
+        }
+        for (Map.Entry<String, ImagePayload> e : evicted) spill(e.getValue());
+        onChange.run();
+    }
+
+    private static long footprint(ImagePayload image) {
+        return image.size() + (image.hasBase64() ? image.base64Length() : 0) + 256;
+    }
+
+    private static byte[] thumbnail(ImagePayload image) {
+        try {
+            BufferedImage src = ImageIO.read(new ByteArrayInputStream(toArray(image)));
+            if (src == null) return null;
+            double scale = (double) THUMB_EDGE / Math.max(src.getWidth(), src.getHeight());
+            int tw = Math.max(1, (int) Math.round(src.getWidth() * Math.min(1, scale)));
+            int th = Math.max(1, (int) Math.round(src.getHeight() * Math.min(1, scale)));
+            BufferedImage dst = new BufferedImage(tw, th, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = dst.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(src, 0, 0, tw, th, Color.WHITE, null);
+            g.dispose();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+            ImageIO.write(dst, "jpeg", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static byte[] toArray(ImagePayload image) {
+        var buf = image.bytes();
+        byte[] raw = new byte[buf.remaining()];
+        buf.get(raw);
+        return raw;
+    }
+
+    // --- Spill tier ---
+
+    private void spill(ImagePayload image) {
+        if (spillDir == null) return;
+        try {
+            Files.createDirectories(spillDir);
+            Path img = spillDir.resolve(image.digest() + ".img");
+            if (!Files.exists(img)) Files.write(img, toArray(image));
+            Entry entry;
+            synchronized (this) {
+                entry = entries.get(image.digest());
+            }
+            Path thumb = spillDir.resolve(image.digest() + ".thumb.jpg");
+            if (entry != null && entry.thumbnail() != null && !Files.exists(thumb)) Files.write(thumb, entry.thumbnail());
+            trimDisk();
+        } catch (IOException e) {
+            System.out.println("Image spill failed: " + e.getMessage());
+        }
+    }
+
+    private ImagePayload readSpilled(String digest) {
+        try {
+            byte[] bytes = Files.readAllBytes(spillDir.resolve(digest + ".img"));
+            Files.setLastModifiedTime(spillDir.resolve(digest + ".img"), FileTime.fromMillis(System.currentTimeMillis()));
+            Entry entry;
+            synchronized (this) {
+                entry = entries.get(digest);
+            }
+            ImagePayload image = ImagePayload.of(bytes, entry == null ? -1 : entry.width(), entry == null ? -1 : entry.height());
+            if (!image.digest().equals(digest)) return null;   // damaged file
+            diskHits.incrementAndGet();
+            put(image, entry == null ? "cached" : entry.name());
+            return image;
+        } catch (IOException e) {
+            synchronized (this) {
+                entries.remove(digest);
+            }
+            return null;
+        }
+    }
+
+    // Oldest spilled images go first once the folder passes the disk limit
+    private void trimDisk() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(spillDir, "*.img")) {
+            dir.forEach(files::add);
+        }
+        long total = 0;
+        for (Path f : files) total += Files.size(f);
+        if (total <= diskLimit) return;
+        files.sort(Comparator.comparing(f -> f.toFile().lastModified()));
+        for (Path f : files) {
+            if (total <= diskLimit) break;
+            total -= Files.size(f);
+            String digest = f.getFileName().toString().replace(".img", "");
+            Files.deleteIfExists(f);
+            Files.deleteIfExists(spillDir.resolve(digest + ".thumb.jpg"));
+            synchronized (this) {
+                if (!memory.containsKey(digest)) entries.remove(digest);
+            }
+        }
+    }
+
+    // Startup: spilled images are listed (thumbnails only); their bytes are read when picked
+    private void loadSpilled() {
+        if (!Files.isDirectory(spillDir)) return;
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(spillDir, "*.img")) {
+            dir.forEach(files::add);
+        } catch (IOException e) {
+            return;
+        }
+        files.sort(Comparator.comparing(f -> f.toFile().lastModified()));
+        for (Path f : files) {
+            String digest = f.getFileName().toString().replace(".img", "");
+            byte[] thumb = null;
+            try {
+                Path t = spillDir.resolve(digest + ".thumb.jpg");
+                if (Files.exists(t)) thumb = Files.readAllBytes(t);
+            } catch (IOException ignore) {}
+            entries.put(digest, new Entry(digest, "cached", -1, -1, thumb));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.project;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+// Raw image bytes ready to be Base64-streamed into a request body: either the original file,
+// memory-mapped, or a small JPEG re-encoded at the vision model's input resolution.
+// The digest is over the bytes actually sent. Payloads kept in ImageCache also keep their Base64
+// form, so sending one again encodes nothing.
+public class ImagePayload {
+
+    private final ByteBuffer bytes;
+    private final String digest;
+    private final int width;
+    private final int height;
+    private volatile byte[] base64;
+
+    private ImagePayload(ByteBuffer bytes, int width, int height) {
+        this.bytes = bytes.asReadOnlyBuffer();
+        this.width = width;
+        this.height = height;
+        this.digest = sha256(this.bytes.duplicate());
+    }
+
+    // maxEdge <= 0 sends the file untouched
+    public static ImagePayload fromFile(Path file, int maxEdge) throws IOException {
+        if (maxEdge > 0) {
+            ImagePayload scaled = downscale(file, maxEdge);
+            if (scaled != null) return scaled;
+        }
+        return mapped(file);
+    }
+
+    // Bytes already prepared for sending (a spilled cache entry)
+    public static ImagePayload of(byte[] bytes, int width, int height) {
+        return new ImagePayload(ByteBuffer.wrap(bytes), width, height);
+    }
+
+    public static ImagePayload mapped(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new ImagePayload(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()), -1, -1);
+        }
+    }
+
+    // Mapped payloads pin the file and its mapping until collected; anything kept (ImageCache)
+    // holds this heap copy instead
+    public ImagePayload onHeap() {
+        if (!bytes.isDirect()) return this;
+        ByteBuffer src = bytes();
+        byte[] raw = new byte[src.remaining()];
+        src.get(raw);
+        return of(raw, width, height);
+    }
+
+    // Independent view; safe to hand to several readers
+    public ByteBuffer bytes() { return bytes.duplicate(); }
+
+    public int size() { return bytes.remaining(); }
+
+    public long base64Length() { return 4L * ((size() + 2) / 3); }
+
+    // Encodes once and keeps the result; ImageRequestBody streams it when present
+    public byte[] base64() {
+        byte[] b = base64;
+        if (b == null) {
+            ByteBuffer src = bytes();
+            byte[] raw = new byte[src.remaining()];
+            src.get(raw);
+            base64 = b = Base64.getEncoder().encode(raw);
+        }
+        return b;
+    }
+
+    public boolean hasBase64() { return base64 != null; }
+
+    public String digest() { return digest; }
+
+    public int width() { return width; }
+
+    public int height() { return height; }
+
+    // Decodes with subsampling so a 24 MP photo never lands on the heap at full size,
+    // then scales to fit maxEdge and re-encodes as JPEG. Returns null when ImageIO can't
+    // read the format (webp) or the image is already small enough.
+    private static ImagePayload downscale(Path file, int maxEdge) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            if (in == null) return null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int w = reader.getWidth(0);
+                int h = reader.getHeight(0);
+                int longest = Math.max(w, h);
+                if (longest <= maxEdge) return null;
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, longest / (maxEdge * 2));   // keep 2x headroom for a smooth final scale
+                param.setSourceSubsampling(step, step, 0, 0);
+                BufferedImage src = reader.read(0, param);
+
+                double scale = (double) maxEdge / Math.max(src.getWidth(), src.getHeight());
+                int tw = Math.max(1, (int) Math.round(src.getWidth() * scale));
+                int th = Math.max(1, (int) Math.round(src.getHeight() * scale));
+                BufferedImage dst = new BufferedImage(tw, th, BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = dst.createGraphics();
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                // JPEG has no alpha: transparent areas go on white, as a viewer shows them, not black
+                g.drawImage(src, 0, 0, tw, th, Color.WHITE, null);
+                g.dispose();
+
+                return new ImagePayload(ByteBuffer.wrap(encodeJpeg(dst, 0.9f)), tw, th);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static byte[] encodeJpeg(BufferedImage img, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        try (MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam p = writer.getDefaultWriteParam();
+            p.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            p.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(img, null, null), p);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static String sha256(ByteBuffer buf) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(buf);
+            return HexFormat.of().formatHex(sha.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.project;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.json.JSONObject;
+
+// Request body for vision calls. The JSON envelope is serialized with a placeholder where the
+// image goes (random per request, so no prompt text can contain it); the image itself is Base64-encoded chunk by chunk while the body is being sent,
+// so no full Base64 String or full JSON String of it ever exists. Cached payloads carry their
+// Base64 bytes already and are sent as they are.
+public final class ImageRequestBody {
+
+    private ImageRequestBody() {}
+
+    // Goes into the envelope's images array; pass the same string to of()
+    public static String newPlaceholder() {
+        return "@@xavigpt-image-" + UUID.randomUUID() + "@@";
+    }
+
+    public static HttpRequest.BodyPublisher of(JSONObject envelope, ImagePayload image, String placeholder) {
+        String json = envelope.toString();
+        int at = json.indexOf(placeholder);
+        if (at < 0 || json.indexOf(placeholder, at + 1) >= 0) {
+            throw new IllegalArgumentException("envelope needs exactly one image placeholder");
+        }
+
+        byte[] prefix = json.substring(0, at).getBytes(StandardCharsets.UTF_8);
+        byte[] suffix = json.substring(at + placeholder.length()).getBytes(StandardCharsets.UTF_8);
+        long length = prefix.length + image.base64Length() + suffix.length;
+
+        return BodyPublishers.fromPublisher(
+            BodyPublishers.ofInputStream(() -> new SequenceInputStream(Collections.enumeration(List.of(
+                new ByteArrayInputStream(prefix),
+                image.hasBase64() ? new ByteArrayInputStream(image.base64()) : new Base64Stream(image.bytes()),
+                new ByteArrayInputStream(suffix))))),
+            length);
+    }
+
+    // Base64 view of a ByteBuffer, encoded 48 KB at a time into a reused buffer
+    static final class Base64Stream extends InputStream {
+        private static final int RAW_CHUNK = 48 * 1024;   // multiple of 3: no padding mid-stream
+
+        private final ByteBuffer src;
+        private final byte[] raw = new byte[RAW_CHUNK];
+        private final byte[] encoded = new byte[RAW_CHUNK / 3 * 4];
+        private final Base64.Encoder encoder = Base64.getEncoder();
+        private int pos = 0;
+        private int limit = 0;
+
+        Base64Stream(ByteBuffer src) {
+            this.src = src;
+        }
+
+        private boolean fill() {
+            if (!src.hasRemaining()) return false;
+            int n = Math.min(RAW_CHUNK, src.remaining());
+            src.get(raw, 0, n);
+            limit = encoder.encode(n == RAW_CHUNK ? raw : Arrays.copyOf(raw, n), encoded);
+            pos = 0;
+            return true;
+        }
+
+        @Override
+        public int read() {
+            if (pos == limit && !fill()) return -1;
+            return encoded[pos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (pos == limit && !fill()) return -1;
+            int n = Math.min(len, limit - pos);
+            System.arraycopy(encoded, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.project;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Rolling per-model latency/throughput windows. Every recorded request also becomes a JFR event.
+public class MetricsRegistry {
+
+    private static final int WINDOW = 256;
+
+    // Fixed-size ring of the most recent samples; percentiles sort a copy (256 doubles, cheap)
+    static final class Rolling {
+        private final double[] values = new double[WINDOW];
+        private int count = 0;
+        private int next = 0;
+
+        synchronized void add(double v) {
+            if (v < 0) return;
+            values[next] = v;
+            next = (next + 1) % WINDOW;
+            if (count < WINDOW) count++;
+        }
+
+        synchronized double percentile(double q) {
+            if (count == 0) return -1;
+            double[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            int idx = (int) Math.ceil(q * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, idx))];
+        }
+
+        synchronized int count() { return count; }
+    }
+
+    static final class ModelStats {
+        final Rolling ttft = new Rolling();
+        final Rolling total = new Rolling();
+        final Rolling load = new Rolling();
+        final Rolling tokensPerSecond = new Rolling();
+        final Rolling promptTokensPerSecond = new Rolling();
+        long requests, failures, cancels, cached;
+    }
+
+    private final Map<String, ModelStats> byModel = new ConcurrentHashMap<>();
+    private volatile RequestMetrics last;
+    // Cancel pressed → tab idle, and → reader gone with connection and slot given back
+    private final Rolling cancelIdle = new Rolling();
+    private final Rolling cancelRelease = new Rolling();
+
+    public void record(RequestMetrics m) {
+        last = m;
+        ModelStats s = byModel.computeIfAbsent(m.model(), k -> new ModelStats());
+        synchronized (s) {
+            s.requests++;
+            switch (m.outcome()) {
+                case "error" -> s.failures++;
+                case "cancelled" -> s.cancels++;
+                case "cached" -> s.cached++;
+                default -> { }
+            }
+        }
+        if ("ok".equals(m.outcome())) {
+            s.ttft.add(m.ttftMs());
+            s.total.add(m.totalMs());
+            s.load.add(m.loadMs());
+            s.tokensPerSecond.add(m.tokensPerSecond());
+            s.promptTokensPerSecond.add(m.promptTokensPerSecond());
+        }
+
+        GenerationEvent e = new GenerationEvent();
+        if (e.shouldCommit()) {
+            e.model = m.model();
+            e.outcome = m.outcome();
+            e.ttft = m.ttftMs();
+            e.total = m.totalMs();
+            e.load = m.loadMs();
+            e.promptTokens = m.promptTokens();
+            e.promptEval = m.promptEvalMs();
+            e.evalTokens = m.evalTokens();
+            e.eval = m.evalMs();
+            e.tokensPerSecond = m.tokensPerSecond();
+            e.commit();
+        }
+    }
+
+    public void recordCancelIdle(long ms) {
+        cancelIdle.add(ms);
+    }
+
+    public void recordCancelRelease(long ms) {
+        cancelRelease.add(ms);
+    }
+
+    public RequestMetrics last() {
+        return last;
+    }
+
+    // p50/p95 per model, e.g. for the stats overlay and the shutdown log
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, ModelStats> entry : new TreeMap<>(byModel).entrySet()) {
+            ModelStats s = entry.getValue();
+            if (sb.length() > 0) sb.append('\n');
+            synchronized (s) {
+                sb.append(String.format("%s: %d req (%d err, %d cancel, %d cached)",
+                    entry.getKey(), s.requests, s.failures, s.cancels, s.cached));
+            }
+            if (s.ttft.count() > 0) {
+                sb.append(String.format("%n  TTFT p50 %s / p95 %s, total p50 %s / p95 %s",
+                    ms(s.ttft.percentile(0.5)), ms(s.ttft.percentile(0.95)),
+                    ms(s.total.percentile(0.5)), ms(s.total.percentile(0.95))));
+                sb.append(String.format("%n  gen %.1f tok/s p50 (p5 %.1f), prefill %.0f tok/s p50, load p95 %s",
+                    s.tokensPerSecond.percentile(0.5), s.tokensPerSecond.percentile(0.05),
+                    s.promptTokensPerSecond.percentile(0.5), ms(s.load.percentile(0.95))));
+            }
+        }
+        if (cancelIdle.count() > 0 || cancelRelease.count() > 0) {
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(String.format("cancel: idle p50 %s / p95 %s, slot released p50 %s / p95 %s",
+                ms(cancelIdle.percentile(0.5)), ms(cancelIdle.percentile(0.95)),
+                ms(cancelRelease.percentile(0.5)), ms(cancelRelease.percentile(0.95))));
+        }
+        return sb.length() == 0 ? "no requests yet" : sb.toString();
+    }
+
+    // Raw percentile access (batch reports, tuning)
+    public double percentile(String model, String metric, double q) {
+        ModelStats s = byModel.get(model);
+        if (s == null) return -1;
+        return switch (metric) {
+            case "ttft" -> s.ttft.percentile(q);
+            case "total" -> s.total.percentile(q);
+            case "load" -> s.load.percentile(q);
+            case "tokens_per_second" -> s.tokensPerSecond.percentile(q);
+            case "prompt_tokens_per_second" -> s.promptTokensPerSecond.percentile(q);
+            default -> throw new IllegalArgumentException(metric);
+        };
+    }
+
+    private static String ms(double v) {
+        return v < 0 ? "-" : String.format("%.0f ms", v);
+    }
+}
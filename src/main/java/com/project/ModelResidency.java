@@ -0,0 +1,340 @@
+package com.project;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+// Tracks which models an Ollama host has in memory and until when (/api/ps expires_at).
+// The table is refreshed in the background, so a send only waits when the model is really
+// cold. Models used recently are re-warmed shortly before their keep_alive runs out.
+public class ModelResidency implements AutoCloseable {
+
+    private static final Duration DEFAULT_KEEP_ALIVE = Duration.ofMinutes(10);   // until a tuner is set
+
+    private static final long REFRESH_SECONDS = 15;
+    private static final Duration EXPIRY_MARGIN = Duration.ofSeconds(5);   // too close to eviction to trust
+    private static final Duration REWARM_LEAD = Duration.ofSeconds(45);
+    private static final Duration REWARM_IF_USED_WITHIN = Duration.ofMinutes(30);
+    private static final long PREWARM_DEBOUNCE_MS = 300;      // cheap to cancel before this fires
+    private static final double PREWARM_HEADROOM = 1.2;        // weights + KV cache/graph overhead
+
+    public record Resident(String name, Instant expiresAt, long sizeVram, long size) {}
+
+    private final HttpClient httpClient;
+    private final URI baseUri;
+    private final boolean local;        // Ollama on this machine: the JVM's free RAM is its free RAM
+    private final Map<String, Resident> residents = new ConcurrentHashMap<>();
+    private final Map<String, Instant> lastUsed = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Void>> loading = new ConcurrentHashMap<>();
+    private final Map<String, Long> modelSizes = new ConcurrentHashMap<>();   // /api/tags, bytes on disk
+    private volatile Instant refreshedAt = null;
+    // Options that decide how a model is loaded (num_ctx, num_thread). Loads must send the same
+    // ones as the requests that follow, or Ollama reloads the model on the first request.
+    private volatile Function<String, JSONObject> loadOptions = name -> null;
+    // keep_alive for a load, the same the model's requests carry, or each (re)load would undo it
+    private volatile Function<String, Duration> keepAlive = name -> DEFAULT_KEEP_ALIVE;
+
+    private final AtomicLong warmHits = new AtomicLong();
+    private final AtomicLong coldLoads = new AtomicLong();
+    private final AtomicLong rewarms = new AtomicLong();
+    private final AtomicLong prewarms = new AtomicLong();
+    private final AtomicLong prewarmsSkipped = new AtomicLong();
+    private final AtomicLong loadMillisTotal = new AtomicLong();
+    private final AtomicLong loadMillisMax = new AtomicLong();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "model-residency");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ModelResidency(HttpClient httpClient, URI baseUri) {
+        this.httpClient = httpClient;
+        this.baseUri = baseUri;
+        this.local = isLoopback(baseUri);
+    }
+
+    public boolean isLocal() {
+        return local;
+    }
+
+    // Literal check only; a host name other than localhost counts as remote (no DNS lookup)
+    static boolean isLoopback(URI uri) {
+        String host = uri.getHost();
+        if (host == null) return false;
+        return host.equalsIgnoreCase("localhost") || host.startsWith("127.") || host.equals("[::1]") || host.equals("::1");
+    }
+
+    public void setLoadOptions(Function<String, JSONObject> loadOptions, Function<String, Duration> keepAlive) {
+        this.loadOptions = loadOptions;
+        this.keepAlive = keepAlive;
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(() -> refresh().thenRun(this::rewarmExpiring).exceptionally(e -> null),
+            0, REFRESH_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // Completes when the model is in memory. onCold runs only when a real load is needed.
+    public CompletableFuture<Void> ensureLoaded(String model, Runnable onCold) {
+        String name = normalize(model);
+        lastUsed.put(name, Instant.now());
+
+        if (refreshedAt == null) {
+            // Nothing known yet (first send right after startup): one /api/ps, then decide
+            return refresh().handle((v, e) -> null).thenCompose(v -> loadIfCold(name, onCold));
+        }
+        return loadIfCold(name, onCold);
+    }
+
+    // Speculative load (e.g. the vision model as soon as an image is attached). Fires after a short
+    // debounce; cancelling before that sends nothing, cancelling after it unloads the model again
+    // unless a real request used it meanwhile. Completes with false when skipped because loading
+    // it would likely push another resident model out of memory.
+    public CompletableFuture<Boolean> prewarm(String model) {
+        String name = normalize(model);
+        Instant requestedAt = Instant.now();
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        scheduler.schedule(() -> {
+            if (result.isDone()) return;   // cancelled during the debounce
+            if (isResident(name) || loading.containsKey(name)) {
+                result.complete(true);
+                return;
+            }
+            knownSize(name).thenCompose(size -> {
+                if (result.isDone()) return CompletableFuture.completedFuture(false);
+                if (!fitsBesideResidents(name, size)) {
+                    prewarmsSkipped.incrementAndGet();
+                    return CompletableFuture.completedFuture(false);
+                }
+                prewarms.incrementAndGet();
+                return load(name).thenApply(v -> true);
+            }).whenComplete((ok, e) -> {
+                if (result.isCancelled() && Boolean.TRUE.equals(ok)) {
+                    Instant used = lastUsed.get(name);
+                    if (used == null || used.isBefore(requestedAt)) unload(name);
+                }
+                if (e != null) result.completeExceptionally(e);
+                else result.complete(ok);
+            });
+        }, PREWARM_DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+
+        return result;
+    }
+
+    public boolean isResident(String model) {
+        Resident r = residents.get(normalize(model));
+        return r != null && r.expiresAt().isAfter(Instant.now().plus(EXPIRY_MARGIN));
+    }
+
+    public boolean isLoading(String model) {
+        return loading.containsKey(normalize(model));
+    }
+
+    public List<Resident> residents() {
+        return new ArrayList<>(residents.values());
+    }
+
+    // Marks a model as just used by a request that carried keep_alive, pushing its expiry out
+    public void touched(String model) {
+        touched(model, keepAlive.apply(normalize(model)));
+    }
+
+    public void touched(String model, Duration keepAlive) {
+        String name = normalize(model);
+        lastUsed.put(name, Instant.now());
+        residents.computeIfPresent(name, (k, r) ->
+            new Resident(r.name(), Instant.now().plus(keepAlive), r.sizeVram(), r.size()));
+    }
+
+    public String stats() {
+        long loads = coldLoads.get() + rewarms.get() + prewarms.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("residency: %d warm sends, %d cold loads, %d re-warms, %d prewarms (%d skipped for memory), load avg %d ms / max %d ms",
+            warmHits.get(), coldLoads.get(), rewarms.get(), prewarms.get(), prewarmsSkipped.get(),
+            loads == 0 ? 0 : loadMillisTotal.get() / loads, loadMillisMax.get()));
+        Instant now = Instant.now();
+        for (Resident r : residents.values()) {
+            sb.append(String.format("%n  %s: %d MB, expires in %ds", r.name(), r.sizeVram() >> 20,
+                Math.max(0, Duration.between(now, r.expiresAt()).getSeconds())));
+        }
+        return sb.toString();
+    }
+
+    // --- Internals ---
+
+    // Only for an Ollama on this machine, whose free RAM the JVM sees; for a remote host there is
+    // nothing to compare against, so it isn't guarded. Nor is an empty server: it can't evict anything.
+    private boolean fitsBesideResidents(String name, long size) {
+        if (!local) return true;
+        boolean othersResident = residents.keySet().stream().anyMatch(n -> !n.equals(name));
+        if (!othersResident || size <= 0) return true;
+        long free = freePhysicalMemory();
+        return free < 0 || free >= (long) (size * PREWARM_HEADROOM);
+    }
+
+    static long freePhysicalMemory() {
+        if (ManagementFactory.getOperatingSystemMXBean()
+                instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getFreeMemorySize();
+        }
+        return -1;
+    }
+
+    private CompletableFuture<Long> knownSize(String name) {
+        Long size = modelSizes.get(name);
+        if (size != null) return CompletableFuture.completedFuture(size);
+        HttpRequest req = HttpRequest.newBuilder()
+            .uri(baseUri.resolve("/api/tags"))
+            .timeout(Duration.ofSeconds(5))
+            .GET()
+            .build();
+        return httpClient.sendAsync(req, HttpResponse.BodyHandlers.ofString())
+            .thenApply(resp -> {
+                JSONArray models = new JSONObject(resp.body()).optJSONArray("models");
+                if (models != null) {
+                    for (int i = 0; i < models.length(); i++) {
+                        JSONObject m = models.getJSONObject(i);
+                        modelSizes.put(normalize(m.optString("name", m.optString("model", ""))), m.optLong("size", 0));
+                    }
+                }
+                return modelSizes.getOrDefault(name, 0L);
+            })
+            .exceptionally(e -> 0L);
+    }
+
+    private void unload(String name) {
+        String json = new JSONObject().put("model", name).put("keep_alive", 0).toString();
+        HttpRequest req = HttpRequest.newBuilder()
+            .uri(baseUri.resolve("/api/generate"))
+            .header("Content-Type", "application/json")
+            .POST(BodyPublishers.ofString(json))
+            .build();
+        httpClient.sendAsync(req, HttpResponse.BodyHandlers.discarding())
+            .whenComplete((r, e) -> { residents.remove(name); refresh(); });
+    }
+
+    private CompletableFuture<Void> loadIfCold(String name, Runnable onCold) {
+        if (isResident(name)) {
+            warmHits.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> inFlight = loading.get(name);
+        if (inFlight != null) return inFlight;   // someone is already loading it
+        if (onCold != null) onCold.run();
+        coldLoads.incrementAndGet();
+        return load(name);
+    }
+
+    // A generate call without prompt only loads the model and sets its keep_alive
+    private CompletableFuture<Void> load(String name) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> previous = loading.putIfAbsent(name, done);
+        if (previous != null) return previous;
+
+        long start = System.nanoTime();
+        Duration keep = keepAlive.apply(name);
+        JSONObject body = new JSONObject()
+            .put("model", name)
+            .put("stream", false)
+            .put("keep_alive", keep.toMinutes() + "m");
+        JSONObject options = loadOptions.apply(name);
+        if (options != null) body.put("options", options);
+        String json = body.toString();
+        HttpRequest req = HttpRequest.newBuilder()
+            .uri(baseUri.resolve("/api/generate"))
+            .header("Content-Type", "application/json")
+            .POST(BodyPublishers.ofString(json))
+            .build();
+        httpClient.sendAsync(req, HttpResponse.BodyHandlers.ofString())
+            .thenAccept(resp -> {
+                if (resp.statusCode() != 200) throw new IllegalStateException("load " + name + ": " + resp.body());
+                long ms = (System.nanoTime() - start) / 1_000_000;
+                loadMillisTotal.addAndGet(ms);
+                loadMillisMax.accumulateAndGet(ms, Math::max);
+                residents.put(name, new Resident(name, Instant.now().plus(keep), 0, 0));
+            })
+            .whenComplete((v, e) -> {
+                loading.remove(name, done);
+                if (e != null) done.completeExceptionally(e);
+                else done.complete(null);
+                refresh();   // pick up the real size/expiry
+            });
+        return done;
+    }
+
+    public CompletableFuture<Void> refresh() {
+        HttpRequest req = HttpRequest.newBuilder()
+            .uri(baseUri.resolve("/api/ps"))
+            .timeout(Duration.ofSeconds(5))
+            .GET()
+            .build();
+        return httpClient.sendAsync(req, HttpResponse.BodyHandlers.ofString())
+            .thenAccept(resp -> {
+                Map<String, Resident> seen = new ConcurrentHashMap<>();
+                JSONArray models = new JSONObject(resp.body()).optJSONArray("models");
+                if (models != null) {
+                    for (int i = 0; i < models.length(); i++) {
+                        JSONObject m = models.getJSONObject(i);
+                        String name = normalize(m.optString("name", m.optString("model", "")));
+                        seen.put(name, new Resident(name, parseExpiry(m.optString("expires_at", null)),
+                            m.optLong("size_vram", 0), m.optLong("size", 0)));
+                    }
+                }
+                residents.keySet().retainAll(seen.keySet());
+                residents.putAll(seen);
+                refreshedAt = Instant.now();
+            });
+    }
+
+    private void rewarmExpiring() {
+        Instant now = Instant.now();
+        for (Resident r : residents.values()) {
+            Instant used = lastUsed.get(r.name());
+            if (used == null || used.isBefore(now.minus(REWARM_IF_USED_WITHIN))) continue;
+            if (r.expiresAt().isBefore(now.plus(REWARM_LEAD)) && !loading.containsKey(r.name())) {
+                rewarms.incrementAndGet();
+                load(r.name());
+            }
+        }
+    }
+
+    private static Instant parseExpiry(String s) {
+        if (s == null || s.isBlank()) return Instant.now().plus(DEFAULT_KEEP_ALIVE);
+        try {
+            return OffsetDateTime.parse(s).toInstant();
+        } catch (Exception e) {
+            return Instant.now().plus(DEFAULT_KEEP_ALIVE);
+        }
+    }
+
+    // "llava-phi3" and "llava-phi3:latest" are the same model
+    public static String normalize(String model) {
+        return model.contains(":") ? model : model + ":latest";
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
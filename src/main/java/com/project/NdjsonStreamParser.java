@@ -0,0 +1,365 @@
+package com.project;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Pull parser for Ollama's NDJSON streams that works on the raw bytes. It only extracts what the
+// client uses (response / message.content, done, error and the final timing stats) and skips
+// everything else (context arrays, model names, dates) without building a DOM or per-line Strings.
+// Lines are assembled before parsing, so multi-byte UTF-8 sequences split across reads are fine.
+public class NdjsonStreamParser {
+
+    // Reused for every line; fields not present in a line are reset to their defaults
+    public static final class Chunk {
+        public String content = "";        // "response" (generate) or "message.content" (chat)
+        public boolean done;
+        public String error;
+        public long totalDuration = -1;    // nanoseconds, only on the final chunk
+        public long loadDuration = -1;
+        public long promptEvalCount = -1;
+        public long promptEvalDuration = -1;
+        public long evalCount = -1;
+        public long evalDuration = -1;
+
+        void reset() {
+            content = "";
+            done = false;
+            error = null;
+            totalDuration = loadDuration = promptEvalCount = promptEvalDuration = evalCount = evalDuration = -1;
+        }
+    }
+
+    // A line that isn't the JSON expected; the bytes arrived fine, so retrying elsewhere won't help
+    public static final class FormatException extends IOException {
+        FormatException(String message) {
+            super(message);
+        }
+    }
+
+    // Smallest code point each sequence length may encode; anything below is an overlong form
+    private static final int[] MIN_CODE_POINT = { 0, 0x80, 0x800, 0x10000 };
+
+    private static final byte[] K_RESPONSE = ascii("response");
+    private static final byte[] K_MESSAGE = ascii("message");
+    private static final byte[] K_CONTENT = ascii("content");
+    private static final byte[] K_DONE = ascii("done");
+    private static final byte[] K_ERROR = ascii("error");
+    private static final byte[] K_TOTAL_DURATION = ascii("total_duration");
+    private static final byte[] K_LOAD_DURATION = ascii("load_duration");
+    private static final byte[] K_PROMPT_EVAL_COUNT = ascii("prompt_eval_count");
+    private static final byte[] K_PROMPT_EVAL_DURATION = ascii("prompt_eval_duration");
+    private static final byte[] K_EVAL_COUNT = ascii("eval_count");
+    private static final byte[] K_EVAL_DURATION = ascii("eval_duration");
+
+    private final InputStream in;
+    private final byte[] readBuf = new byte[16 * 1024];
+    private int readPos = 0;
+    private int readLimit = 0;
+
+    private byte[] line = new byte[4 * 1024];
+    private int lineLen = 0;
+    private int p;   // cursor inside line
+
+    private final StringBuilder text = new StringBuilder(256);
+
+    public NdjsonStreamParser(InputStream in) {
+        this.in = in;
+    }
+
+    // Fills chunk with the next non-blank line; false at end of stream
+    public boolean next(Chunk chunk) throws IOException {
+        while (readLine()) {
+            p = 0;
+            skipWs();
+            if (p >= lineLen) continue;   // blank line
+            chunk.reset();
+            parseTopLevel(chunk);
+            return true;
+        }
+        return false;
+    }
+
+    // --- Line assembly ---
+
+    private boolean readLine() throws IOException {
+        lineLen = 0;
+        boolean any = false;
+        while (true) {
+            if (readPos == readLimit) {
+                readLimit = in.read(readBuf, 0, readBuf.length);
+                readPos = 0;
+                if (readLimit <= 0) {
+                    readLimit = 0;
+                    return any;
+                }
+            }
+            any = true;
+            int start = readPos;
+            while (readPos < readLimit && readBuf[readPos] != '\n') readPos++;
+            appendLine(readBuf, start, readPos - start);
+            if (readPos < readLimit) {
+                readPos++;   // consume '\n'
+                return true;
+            }
+        }
+    }
+
+    private void appendLine(byte[] src, int off, int len) {
+        if (lineLen + len > line.length) line = Arrays.copyOf(line, Math.max(line.length * 2, lineLen + len));
+        System.arraycopy(src, off, line, lineLen, len);
+        lineLen += len;
+    }
+
+    // --- JSON scanning ---
+
+    private void parseTopLevel(Chunk c) throws IOException {
+        expect('{');
+        skipWs();
+        if (peek() == '}') { p++; return; }
+        while (true) {
+            skipWs();
+            int keyStart = p + 1;
+            int keyEnd = skipString();
+            skipWs();
+            expect(':');
+            skipWs();
+
+            if (keyIs(keyStart, keyEnd, K_RESPONSE)) c.content = readString();
+            else if (keyIs(keyStart, keyEnd, K_MESSAGE)) parseMessage(c);
+            else if (keyIs(keyStart, keyEnd, K_DONE)) c.done = readBoolean();
+            else if (keyIs(keyStart, keyEnd, K_ERROR)) c.error = peek() == '"' ? readString() : skipValueToNull();
+            else if (keyIs(keyStart, keyEnd, K_TOTAL_DURATION)) c.totalDuration = readLong();
+            else if (keyIs(keyStart, keyEnd, K_LOAD_DURATION)) c.loadDuration = readLong();
+            else if (keyIs(keyStart, keyEnd, K_PROMPT_EVAL_COUNT)) c.promptEvalCount = readLong();
+            else if (keyIs(keyStart, keyEnd, K_PROMPT_EVAL_DURATION)) c.promptEvalDuration = readLong();
+            else if (keyIs(keyStart, keyEnd, K_EVAL_COUNT)) c.evalCount = readLong();
+            else if (keyIs(keyStart, keyEnd, K_EVAL_DURATION)) c.evalDuration = readLong();
+            else skipValue();
+
+            skipWs();
+            int ch = next();
+            if (ch == '}') return;
+            if (ch != ',') throw error("expected ',' or '}'");
+        }
+    }
+
+    private void parseMessage(Chunk c) throws IOException {
+        if (peek() != '{') { skipValue(); return; }
+        p++;
+        skipWs();
+        if (peek() == '}') { p++; return; }
+        while (true) {
+            skipWs();
+            int keyStart = p + 1;
+            int keyEnd = skipString();
+            skipWs();
+            expect(':');
+            skipWs();
+            if (keyIs(keyStart, keyEnd, K_CONTENT) && peek() == '"') c.content = readString();
+            else skipValue();
+            skipWs();
+            int ch = next();
+            if (ch == '}') return;
+            if (ch != ',') throw error("expected ',' or '}'");
+        }
+    }
+
+    private boolean keyIs(int start, int end, byte[] key) {
+        return end - start == key.length && Arrays.equals(line, start, end, key, 0, key.length);
+    }
+
+    // Decodes a JSON string starting at the opening quote. Plain ASCII (the common token case)
+    // becomes a Latin-1 String straight from the bytes; escapes and UTF-8 go through the builder.
+    private String readString() throws IOException {
+        expect('"');
+        int start = p;
+        while (p < lineLen) {
+            byte b = line[p];
+            if (b == '"') {
+                String s = new String(line, start, p - start, StandardCharsets.ISO_8859_1);
+                p++;
+                return s;
+            }
+            if (b == '\\' || b < 0) break;
+            p++;
+        }
+
+        text.setLength(0);
+        for (int i = start; i < p; i++) text.append((char) line[i]);
+        while (p < lineLen) {
+            int b = line[p] & 0xFF;
+            if (b == '"') {
+                p++;
+                return text.toString();
+            }
+            if (b == '\\') {
+                p++;
+                int e = next();
+                switch (e) {
+                    case '"' -> text.append('"');
+                    case '\\' -> text.append('\\');
+                    case '/' -> text.append('/');
+                    case 'b' -> text.append('\b');
+                    case 'f' -> text.append('\f');
+                    case 'n' -> text.append('\n');
+                    case 'r' -> text.append('\r');
+                    case 't' -> text.append('\t');
+                    case 'u' -> text.append(readHex4());   // surrogate pairs arrive as two escapes
+                    default -> throw error("bad escape");
+                }
+            } else if (b < 0x80) {
+                text.append((char) b);
+                p++;
+            } else {
+                decodeUtf8(b);
+            }
+        }
+        throw error("unterminated string");
+    }
+
+    private void decodeUtf8(int b0) throws IOException {
+        int extra;
+        int cp;
+        if ((b0 & 0xE0) == 0xC0) { extra = 1; cp = b0 & 0x1F; }
+        else if ((b0 & 0xF0) == 0xE0) { extra = 2; cp = b0 & 0x0F; }
+        else if ((b0 & 0xF8) == 0xF0) { extra = 3; cp = b0 & 0x07; }
+        else { text.append('\uFFFD'); p++; return; }
+
+        if (p + extra >= lineLen) throw error("truncated UTF-8 sequence");
+        for (int i = 1; i <= extra; i++) {
+            int bx = line[p + i] & 0xFF;
+            if ((bx & 0xC0) != 0x80) {   // malformed: replace the lead byte, resync on the next
+                text.append('\uFFFD');
+                p++;
+                return;
+            }
+            cp = (cp << 6) | (bx & 0x3F);
+        }
+        p += extra + 1;
+        // Overlong forms, surrogates and values past U+10FFFF are well-formed bytes but not text
+        if (cp < MIN_CODE_POINT[extra] || (cp >= 0xD800 && cp <= 0xDFFF) || cp > Character.MAX_CODE_POINT) {
+            text.append('\uFFFD');
+        } else {
+            text.appendCodePoint(cp);
+        }
+    }
+
+    private char readHex4() throws IOException {
+        if (p + 4 > lineLen) throw error("bad \\u escape");
+        int v = 0;
+        for (int i = 0; i < 4; i++) {
+            int d = Character.digit(line[p++], 16);
+            if (d < 0) throw error("bad \\u escape");
+            v = (v << 4) | d;
+        }
+        return (char) v;
+    }
+
+    private long readLong() throws IOException {
+        int c = peek();
+        if (c == 'n') { skipValue(); return -1; }
+        boolean neg = c == '-';
+        if (neg) p++;
+        long v = 0;
+        int start = p;
+        while (p < lineLen && line[p] >= '0' && line[p] <= '9') v = v * 10 + (line[p++] - '0');
+        if (p == start) throw error("expected number");
+        // Durations/counts are integers; tolerate a fraction or exponent by skipping it
+        while (p < lineLen && (line[p] == '.' || line[p] == 'e' || line[p] == 'E' || line[p] == '+' || line[p] == '-'
+                || (line[p] >= '0' && line[p] <= '9'))) p++;
+        return neg ? -v : v;
+    }
+
+    private boolean readBoolean() throws IOException {
+        if (matchLiteral("true")) return true;
+        if (matchLiteral("false")) return false;
+        skipValue();
+        return false;
+    }
+
+    private String skipValueToNull() throws IOException {
+        skipValue();
+        return null;
+    }
+
+    private void skipValue() throws IOException {
+        int c = peek();
+        switch (c) {
+            case '"' -> skipString();
+            case '{', '[' -> skipNested();
+            case 't' -> { if (!matchLiteral("true")) throw error("bad literal"); }
+            case 'f' -> { if (!matchLiteral("false")) throw error("bad literal"); }
+            case 'n' -> { if (!matchLiteral("null")) throw error("bad literal"); }
+            default -> readLong();
+        }
+    }
+
+    // Returns the index of the closing quote, leaves p after it
+    private int skipString() throws IOException {
+        expect('"');
+        while (p < lineLen) {
+            byte b = line[p];
+            if (b == '\\') { p += 2; continue; }
+            if (b == '"') return p++;
+            p++;
+        }
+        throw error("unterminated string");
+    }
+
+    private void skipNested() throws IOException {
+        int depth = 0;
+        while (p < lineLen) {
+            byte b = line[p];
+            if (b == '"') { skipString(); continue; }
+            if (b == '{' || b == '[') depth++;
+            else if (b == '}' || b == ']') {
+                depth--;
+                if (depth == 0) { p++; return; }
+            }
+            p++;
+        }
+        throw error("unterminated object/array");
+    }
+
+    private boolean matchLiteral(String lit) {
+        int n = lit.length();
+        if (p + n > lineLen) return false;
+        for (int i = 0; i < n; i++) if (line[p + i] != lit.charAt(i)) return false;
+        p += n;
+        return true;
+    }
+
+    private void skipWs() {
+        while (p < lineLen) {
+            byte b = line[p];
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') return;
+            p++;
+        }
+    }
+
+    private int peek() throws IOException {
+        if (p >= lineLen) throw error("unexpected end of line");
+        return line[p];
+    }
+
+    private int next() throws IOException {
+        if (p >= lineLen) throw error("unexpected end of line");
+        return line[p++];
+    }
+
+    private void expect(char c) throws IOException {
+        if (next() != c) throw error("expected '" + c + "'");
+    }
+
+    private IOException error(String msg) {
+        int from = Math.max(0, p - 40);
+        String near = new String(line, from, Math.min(lineLen, p + 40) - from, StandardCharsets.UTF_8);
+        return new FormatException("NDJSON: " + msg + " at " + p + " near: " + near);
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
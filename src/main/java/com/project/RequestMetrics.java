@@ -0,0 +1,46 @@
+package com.project;
+
+// Timings of one request. Client side: ttft/total. Server side (final done:true chunk, converted
+// from ns to ms): load, prompt eval, eval. -1 when unknown (cancelled, cached, error).
+public record RequestMetrics(
+    String model,
+    String outcome,          // "ok", "cancelled", "error", "cached"
+    long ttftMs,
+    long totalMs,
+    long loadMs,
+    long promptTokens,
+    long promptEvalMs,
+    long evalTokens,
+    long evalMs) {
+
+    public static RequestMetrics of(String model, String outcome, long ttftMs, long totalMs, NdjsonStreamParser.Chunk last) {
+        if (last == null || !last.done) return new RequestMetrics(model, outcome, ttftMs, totalMs, -1, -1, -1, -1, -1);
+        return new RequestMetrics(model, outcome, ttftMs, totalMs,
+            nsToMs(last.loadDuration), last.promptEvalCount, nsToMs(last.promptEvalDuration),
+            last.evalCount, nsToMs(last.evalDuration));
+    }
+
+    // Server-measured generation speed; prefill and load are excluded
+    public double tokensPerSecond() {
+        return evalTokens > 0 && evalMs > 0 ? evalTokens * 1000.0 / evalMs : -1;
+    }
+
+    public double promptTokensPerSecond() {
+        return promptTokens > 0 && promptEvalMs > 0 ? promptTokens * 1000.0 / promptEvalMs : -1;
+    }
+
+    public String summary() {
+        StringBuilder sb = new StringBuilder(model).append(": ");
+        if (ttftMs >= 0) sb.append("TTFT ").append(ttftMs).append(" ms, ");
+        sb.append("total ").append(totalMs).append(" ms");
+        if (loadMs >= 0) sb.append(", load ").append(loadMs).append(" ms");
+        if (promptTokens >= 0) sb.append(String.format(", prefill %d tok in %d ms", promptTokens, promptEvalMs));
+        if (evalTokens >= 0) sb.append(String.format(", %d tok at %.1f tok/s", evalTokens, tokensPerSecond()));
+        if (!"ok".equals(outcome)) sb.append(" (").append(outcome).append(')');
+        return sb.toString();
+    }
+
+    private static long nsToMs(long ns) {
+        return ns < 0 ? -1 : ns / 1_000_000;
+    }
+}
@@ -0,0 +1,242 @@
+package com.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+// Admission control in front of EndpointPool: at most perModel generations of one model and
+// perBackend requests on one host run at once; the rest wait. Interactive turns always go before
+// background work (warm-ups, summaries, batch prompts) that wants the same model or host, and
+// background work never takes the last slot of a model. Within a priority, owners (chat tabs) are
+// served round robin so one busy tab can't starve the others; each owner's own requests stay FIFO.
+public class RequestScheduler {
+
+    public enum Priority { INTERACTIVE, BACKGROUND }
+
+    // Held for the duration of one request; close() hands the slot to the next waiter
+    public final class Permit implements AutoCloseable {
+        private final String model;
+        private final EndpointPool.Endpoint endpoint;
+        private final Priority priority;
+        private final long waitedMillis;
+        private boolean released = false;
+
+        private Permit(String model, EndpointPool.Endpoint endpoint, Priority priority, long waitedMillis) {
+            this.model = model;
+            this.endpoint = endpoint;
+            this.priority = priority;
+            this.waitedMillis = waitedMillis;
+        }
+
+        // Host the slot was reserved on; requests should try it first
+        public EndpointPool.Endpoint endpoint() { return endpoint; }
+
+        public long waitedMillis() { return waitedMillis; }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+
+    private static final class Waiter {
+        final String model;
+        final Priority priority;
+        final CompletableFuture<Permit> future = new CompletableFuture<>();
+        final long enqueuedAt = System.nanoTime();
+
+        Waiter(String model, Priority priority) {
+            this.model = model;
+            this.priority = priority;
+        }
+    }
+
+    private final EndpointPool pool;
+    private final int perModel;
+    private final int perBackend;
+
+    // Guarded by this
+    private final Map<String, Integer> modelInFlight = new HashMap<>();
+    private final Map<String, Integer> backgroundInFlight = new HashMap<>();
+    private final Map<EndpointPool.Endpoint, Integer> backendInFlight = new HashMap<>();
+    private final EnumMap<Priority, LinkedHashMap<Object, ArrayDeque<Waiter>>> queues = new EnumMap<>(Priority.class);
+    private final EnumMap<Priority, long[]> waits = new EnumMap<>(Priority.class);   // {granted, total ms, max ms}
+
+    public RequestScheduler(EndpointPool pool, int perModel, int perBackend) {
+        this.pool = pool;
+        this.perModel = Math.max(1, perModel);
+        this.perBackend = Math.max(1, perBackend);
+        for (Priority p : Priority.values()) {
+            queues.put(p, new LinkedHashMap<>());
+            waits.put(p, new long[3]);
+        }
+    }
+
+    public static RequestScheduler fromSettings(EndpointPool pool) {
+        return new RequestScheduler(pool, Settings.schedulerPerModel(), Settings.schedulerPerBackend());
+    }
+
+    // Completes when a slot is free. Cancelling the future withdraws the request.
+    public CompletableFuture<Permit> acquire(String model, Priority priority, Object owner) {
+        Waiter w = new Waiter(ModelResidency.normalize(model), priority);
+        synchronized (this) {
+            queues.get(priority).computeIfAbsent(owner, k -> new ArrayDeque<>()).add(w);
+        }
+        dispatch();
+        return w.future;
+    }
+
+    // Runs job once a slot is free and releases it when the job's future completes.
+    // Cancelling the result cancels the wait, or the job's future if it already started.
+    public <T> CompletableFuture<T> submit(String model, Priority priority, Object owner,
+                                           Function<Permit, CompletableFuture<T>> job) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<Permit> slot = acquire(model, priority, owner);
+        slot.whenComplete((permit, err) -> {
+            if (err != null) {
+                result.completeExceptionally(err);
+                return;
+            }
+            if (result.isDone()) {
+                permit.close();
+                return;
+            }
+            CompletableFuture<T> running;
+            try {
+                running = job.apply(permit);
+            } catch (RuntimeException e) {
+                permit.close();
+                result.completeExceptionally(e);
+                return;
+            }
+            result.whenComplete((v, e) -> { if (result.isCancelled()) running.cancel(false); });
+            running.whenComplete((v, e) -> {
+                permit.close();
+                if (e != null) result.completeExceptionally(e);
+                else result.complete(v);
+            });
+        });
+        result.whenComplete((v, e) -> { if (result.isCancelled()) slot.cancel(false); });
+        return result;
+    }
+
+    public synchronized int queued() {
+        int n = 0;
+        for (LinkedHashMap<Object, ArrayDeque<Waiter>> byOwner : queues.values()) {
+            for (ArrayDeque<Waiter> q : byOwner.values()) n += q.size();
+        }
+        return n;
+    }
+
+    public synchronized String stats() {
+        int inFlight = modelInFlight.values().stream().mapToInt(Integer::intValue).sum();
+        StringBuilder sb = new StringBuilder(String.format("scheduler: %d in flight, %d queued (max %d/model, %d/host)",
+            inFlight, queued(), perModel, perBackend));
+        for (Priority p : Priority.values()) {
+            long[] w = waits.get(p);
+            if (w[0] == 0) continue;
+            sb.append(String.format("%n  %s: %d granted, wait avg %d ms / max %d ms",
+                p.name().toLowerCase(), w[0], w[1] / w[0], w[2]));
+        }
+        return sb.toString();
+    }
+
+    // --- Internals ---
+
+    private void dispatch() {
+        List<Runnable> grants = new ArrayList<>();
+        synchronized (this) {
+            // Interactive waiters left over after their pass: background work may not take a slot
+            // they are queued for. One held back only by its model's cap blocks that model; one
+            // held back for want of a host blocks every host.
+            Set<String> interactiveModels = new HashSet<>();
+            boolean interactiveNeedsHost = false;
+            for (Priority p : Priority.values()) {
+                LinkedHashMap<Object, ArrayDeque<Waiter>> byOwner = queues.get(p);
+                if (p == Priority.BACKGROUND && interactiveNeedsHost) break;   // strict priority
+                boolean progress = true;
+                while (progress) {
+                    progress = false;
+                    List<Object> served = new ArrayList<>();
+                    Iterator<Map.Entry<Object, ArrayDeque<Waiter>>> it = byOwner.entrySet().iterator();
+                    while (it.hasNext()) {
+                        Map.Entry<Object, ArrayDeque<Waiter>> e = it.next();
+                        ArrayDeque<Waiter> q = e.getValue();
+                        while (!q.isEmpty() && q.peek().future.isDone()) q.poll();   // withdrawn
+                        if (q.isEmpty()) {
+                            it.remove();
+                            continue;
+                        }
+                        Waiter w = q.peek();
+                        if (p == Priority.BACKGROUND && interactiveModels.contains(w.model)) continue;
+                        EndpointPool.Endpoint endpoint = admit(w);
+                        if (endpoint == null) continue;
+                        q.poll();
+                        Permit permit = grant(w, endpoint);
+                        grants.add(() -> { if (!w.future.complete(permit)) permit.close(); });
+                        served.add(e.getKey());
+                        progress = true;
+                    }
+                    // One grant per owner per pass; served owners go to the back of the line
+                    for (Object owner : served) {
+                        ArrayDeque<Waiter> q = byOwner.remove(owner);
+                        if (q != null && !q.isEmpty()) byOwner.put(owner, q);
+                    }
+                }
+                if (p != Priority.INTERACTIVE) continue;
+                for (ArrayDeque<Waiter> q : byOwner.values()) {
+                    for (Waiter w : q) {
+                        if (w.future.isDone()) continue;
+                        interactiveModels.add(w.model);
+                        if (modelInFlight.getOrDefault(w.model, 0) < perModel) interactiveNeedsHost = true;
+                    }
+                }
+            }
+        }
+        grants.forEach(Runnable::run);   // outside the lock: completions run callers' callbacks
+    }
+
+    // Host with a free slot for this waiter, or null if it has to keep waiting
+    private EndpointPool.Endpoint admit(Waiter w) {
+        if (modelInFlight.getOrDefault(w.model, 0) >= perModel) return null;
+        int backgroundCap = Math.max(1, perModel - 1);
+        if (w.priority == Priority.BACKGROUND && backgroundInFlight.getOrDefault(w.model, 0) >= backgroundCap) return null;
+        Set<EndpointPool.Endpoint> full = new HashSet<>();
+        for (Map.Entry<EndpointPool.Endpoint, Integer> e : backendInFlight.entrySet()) {
+            if (e.getValue() >= perBackend) full.add(e.getKey());
+        }
+        return pool.pick(w.model, full);
+    }
+
+    private Permit grant(Waiter w, EndpointPool.Endpoint endpoint) {
+        modelInFlight.merge(w.model, 1, Integer::sum);
+        backendInFlight.merge(endpoint, 1, Integer::sum);
+        if (w.priority == Priority.BACKGROUND) backgroundInFlight.merge(w.model, 1, Integer::sum);
+        long waited = (System.nanoTime() - w.enqueuedAt) / 1_000_000;
+        long[] stats = waits.get(w.priority);
+        stats[0]++;
+        stats[1] += waited;
+        stats[2] = Math.max(stats[2], waited);
+        return new Permit(w.model, endpoint, w.priority, waited);
+    }
+
+    private void release(Permit p) {
+        synchronized (this) {
+            if (p.released) return;
+            p.released = true;
+            modelInFlight.merge(p.model, -1, Integer::sum);
+            backendInFlight.merge(p.endpoint, -1, Integer::sum);
+            if (p.priority == Priority.BACKGROUND) backgroundInFlight.merge(p.model, -1, Integer::sum);
+        }
+        dispatch();
+    }
+}
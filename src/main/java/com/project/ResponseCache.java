@@ -0,0 +1,248 @@
+package com.project;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Opt-in response cache: LRU in memory, SQLite (data/cache.db) behind it.
+// Keys are SHA-256 over model, prompt, image digest and options, so any change in what
+// the model would see is a different entry. Both tiers are bounded by size and by TTL.
+public class ResponseCache implements AutoCloseable {
+
+    public record Entry(String text, long createdAt, long generationMillis) {
+        long bytes() { return 2L * text.length() + 64; }
+    }
+
+    private final long memoryLimit;
+    private final long diskLimit;
+    private final long ttlMillis;
+
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes = 0;
+
+    private final Connection conn;
+    private final ExecutorService diskWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "response-cache-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong savedMillis = new AtomicLong();
+
+    public ResponseCache(String dbPath, long memoryLimit, long diskLimit, long ttlSeconds) throws SQLException {
+        this.memoryLimit = memoryLimit;
+        this.diskLimit = diskLimit;
+        this.ttlMillis = ttlSeconds * 1000;
+
+        File parent = new File(dbPath).getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
+        conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+        try (Statement st = conn.createStatement()) {
+            st.execute("PRAGMA journal_mode=WAL");
+            st.execute("PRAGMA synchronous=NORMAL");
+            st.execute("CREATE TABLE IF NOT EXISTS responses (" +
+                "key TEXT PRIMARY KEY, model TEXT, response TEXT NOT NULL, size INTEGER NOT NULL, " +
+                "created_at INTEGER NOT NULL, last_used INTEGER NOT NULL, generation_ms INTEGER)");
+            st.execute("CREATE INDEX IF NOT EXISTS responses_by_use ON responses(last_used)");
+        }
+    }
+
+    public static ResponseCache fromSettings() throws SQLException {
+        return new ResponseCache("data/cache.db",
+            Settings.cacheMemoryBytes(), Settings.cacheDiskBytes(), Settings.cacheTtlSeconds());
+    }
+
+    public static String key(String model, String prompt, String imageDigest, String options) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            for (String part : new String[] { model, prompt, imageDigest, options }) {
+                if (part != null) sha.update(part.getBytes(StandardCharsets.UTF_8));
+                sha.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(sha.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // May touch the disk tier; call off the FX thread. Returns null on a miss.
+    public Entry get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            Entry e = memory.get(key);
+            if (e != null && now - e.createdAt() <= ttlMillis) {
+                memoryHits.incrementAndGet();
+                savedMillis.addAndGet(e.generationMillis());
+                return e;
+            }
+            if (e != null) removeFromMemory(key);
+        }
+
+        Entry e = readDisk(key, now);
+        if (e == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        diskHits.incrementAndGet();
+        savedMillis.addAndGet(e.generationMillis());
+        putInMemory(key, e);
+        return e;
+    }
+
+    public void put(String key, String model, String text, long generationMillis) {
+        if (text == null || text.isEmpty()) return;
+        Entry e = new Entry(text, System.currentTimeMillis(), generationMillis);
+        putInMemory(key, e);
+        diskWriter.execute(() -> writeDisk(key, model, e));
+    }
+
+    public String stats() {
+        long hits = memoryHits.get() + diskHits.get();
+        long total = hits + misses.get();
+        return String.format("cache: %d hits (%d mem, %d disk), %d misses, %.0f%% hit rate, %.1f s generation saved",
+            hits, memoryHits.get(), diskHits.get(), misses.get(),
+            total == 0 ? 0.0 : 100.0 * hits / total, savedMillis.get() / 1000.0);
+    }
+
+    // --- Memory tier ---
+
+    private void putInMemory(String key, Entry e) {
+        if (e.bytes() > memoryLimit) return;
+        synchronized (memory) {
+            removeFromMemory(key);
+            memory.put(key, e);
+            memoryBytes += e.bytes();
+            Iterator<Map.Entry<String, Entry>> it = memory.entrySet().iterator();
+            while (memoryBytes > memoryLimit && it.hasNext()) {
+                memoryBytes -= it.next().getValue().bytes();   // eldest first in access order
+                it.remove();
+            }
+        }
+    }
+
+    private void removeFromMemory(String key) {
+        Entry old = memory.remove(key);
+        if (old != null) memoryBytes -= old.bytes();
+    }
+
+    // --- Disk tier ---
+
+    private Entry readDisk(String key, long now) {
+        synchronized (conn) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT response, created_at, generation_ms FROM responses WHERE key = ?")) {
+                ps.setString(1, key);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) return null;
+                    Entry e = new Entry(rs.getString(1), rs.getLong(2), rs.getLong(3));
+                    if (now - e.createdAt() > ttlMillis) {
+                        diskWriter.execute(() -> deleteDisk(key));
+                        return null;
+                    }
+                    diskWriter.execute(() -> touchDisk(key, now));
+                    return e;
+                }
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+                return null;
+            }
+        }
+    }
+
+    private void writeDisk(String key, String model, Entry e) {
+        synchronized (conn) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT OR REPLACE INTO responses (key, model, response, size, created_at, last_used, generation_ms) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                ps.setString(1, key);
+                ps.setString(2, model);
+                ps.setString(3, e.text());
+                ps.setLong(4, e.bytes());
+                ps.setLong(5, e.createdAt());
+                ps.setLong(6, e.createdAt());
+                ps.setLong(7, e.generationMillis());
+                ps.executeUpdate();
+                evictDisk(e.createdAt());
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    // Drops expired rows, then least recently used ones until the table fits the budget
+    private void evictDisk(long now) throws SQLException {
+        try (PreparedStatement expired = conn.prepareStatement("DELETE FROM responses WHERE created_at < ?")) {
+            expired.setLong(1, now - ttlMillis);
+            expired.executeUpdate();
+        }
+        long total;
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COALESCE(SUM(size), 0) FROM responses")) {
+            total = rs.next() ? rs.getLong(1) : 0;
+        }
+        if (total <= diskLimit) return;
+        try (PreparedStatement oldest = conn.prepareStatement(
+                 "SELECT key, size FROM responses ORDER BY last_used ASC");
+             PreparedStatement delete = conn.prepareStatement("DELETE FROM responses WHERE key = ?");
+             ResultSet rs = oldest.executeQuery()) {
+            while (total > diskLimit && rs.next()) {
+                delete.setString(1, rs.getString(1));
+                delete.addBatch();
+                total -= rs.getLong(2);
+            }
+            delete.executeBatch();
+        }
+    }
+
+    private void touchDisk(String key, long now) {
+        synchronized (conn) {
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE responses SET last_used = ? WHERE key = ?")) {
+                ps.setLong(1, now);
+                ps.setString(2, key);
+                ps.executeUpdate();
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    private void deleteDisk(String key) {
+        synchronized (conn) {
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM responses WHERE key = ?")) {
+                ps.setString(1, key);
+                ps.executeUpdate();
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        diskWriter.shutdown();
+        try {
+            diskWriter.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+        }
+        try { conn.close(); } catch (SQLException ignore) {}
+    }
+}
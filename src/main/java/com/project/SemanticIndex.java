@@ -0,0 +1,148 @@
+package com.project;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Embedding index over the chat history. A background thread embeds new messages in batches
+// (/api/embed, background priority in the scheduler) and appends them to data/xavigpt.vectors,
+// a VectorFile of [message id, conversation id, unit vector] records. Search embeds the query,
+// then scans the memory-mapped records on the common pool; vectors never land on the heap. At
+// 768 dimensions 100k messages are ~300 MB of mapped file and a few tens of ms of scanning.
+public class SemanticIndex implements AutoCloseable {
+
+    public record Hit(long messageId, long conversationId, String role, String content, float score) {}
+
+    private static final int BATCH = 32;
+    private static final long IDLE_MS = 5_000;
+    private static final long BACKOFF_MS = 60_000;
+
+    private final String model;
+    private final VectorFile vectors;
+    private long cursor;                              // last message id looked at (indexer thread)
+
+    private ChatStore store;
+    private Embedder embedder;
+    private Thread indexer;
+    private volatile boolean closed = false;
+
+    private final AtomicLong indexed = new AtomicLong();
+    private volatile String lastError;
+    private volatile long lastEmbedMs = -1, lastScanMs = -1;
+
+    public SemanticIndex(Path file, String model) throws IOException {
+        this.model = model;
+        vectors = new VectorFile(file, model);
+        cursor = Math.max(0, vectors.lastId());
+    }
+
+    public static SemanticIndex fromSettings(Path file) throws IOException {
+        return new SemanticIndex(file, Settings.embedModel());
+    }
+
+    // Starts embedding whatever the store has that the file doesn't
+    public void start(ChatStore store, EndpointPool pool, RequestScheduler scheduler, GenerationTuner tuner) {
+        this.store = store;
+        this.embedder = new Embedder(pool, scheduler, tuner, model);
+        indexer = Thread.ofPlatform().daemon().name("semantic-indexer").start(this::indexLoop);
+    }
+
+    public int size() {
+        return vectors.size();
+    }
+
+    // Top k messages by cosine similarity to the query (embedding is interactive work)
+    public CompletableFuture<List<Hit>> search(String query, int k) {
+        long start = System.nanoTime();
+        return embedder.embed(List.of(query), RequestScheduler.Priority.INTERACTIVE, this).thenCompose(q -> {
+            long scanStart = System.nanoTime();
+            lastEmbedMs = (scanStart - start) / 1_000_000;
+            long[][] top = topK(q[0], k);
+            lastScanMs = (System.nanoTime() - scanStart) / 1_000_000;
+            return store.messages(top[0]).thenApply(rows -> {
+                Map<Long, ChatStore.IndexedMessage> byId = new HashMap<>();
+                for (ChatStore.IndexedMessage m : rows) byId.put(m.id(), m);
+                List<Hit> hits = new ArrayList<>(top[0].length);
+                for (int i = 0; i < top[0].length; i++) {
+                    ChatStore.IndexedMessage m = byId.get(top[0][i]);
+                    if (m != null) hits.add(new Hit(m.id(), m.conversationId(), m.role(), m.content(), VectorFile.score(top[2][i])));
+                }
+                return hits;
+            });
+        });
+    }
+
+    public String stats() {
+        return String.format("search index: %d messages (%d this session, %d dims, %s)%s%s", vectors.size(), indexed.get(),
+            vectors.dim(), model, lastScanMs < 0 ? "" : String.format(", last search embed %d ms + scan %d ms", lastEmbedMs, lastScanMs),
+            lastError == null ? "" : ", " + lastError);
+    }
+
+    // {message ids, conversation ids, score bits} of the k best records, best first
+    long[][] topK(float[] query, int k) {
+        return vectors.topK(query, k, null);
+    }
+
+    // --- Indexing ---
+
+    private void indexLoop() {
+        while (!closed) {
+            try {
+                List<ChatStore.IndexedMessage> batch = store.messagesAfter(cursor, BATCH).get();
+                if (batch.isEmpty()) {
+                    Thread.sleep(IDLE_MS);
+                    continue;
+                }
+                List<ChatStore.IndexedMessage> todo = new ArrayList<>(batch.size());
+                List<String> texts = new ArrayList<>(batch.size());
+                for (ChatStore.IndexedMessage m : batch) {
+                    if (m.content().isBlank()) continue;
+                    todo.add(m);
+                    texts.add(m.content());
+                }
+                if (!todo.isEmpty() && !append(todo, embedder.embed(texts, RequestScheduler.Priority.BACKGROUND, this).get())) {
+                    cursor = 0;   // file started over: every message is embedded again
+                    continue;
+                }
+                cursor = batch.get(batch.size() - 1).id();
+                lastError = null;
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                // Typically the embedding model isn't pulled, or the server is down
+                String msg = String.valueOf(e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                if (!msg.equals(lastError)) System.out.println("Search indexing paused: " + msg);
+                lastError = msg;
+                try {
+                    Thread.sleep(BACKOFF_MS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Indexer thread only (and benchmarks); false when the vector file started over
+    boolean append(List<ChatStore.IndexedMessage> messages, float[][] embeddings) throws IOException {
+        long[] ids = new long[messages.size()], groups = new long[messages.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = messages.get(i).id();
+            groups[i] = messages.get(i).conversationId();
+        }
+        if (!vectors.append(ids, groups, embeddings)) return false;
+        indexed.addAndGet(ids.length);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (indexer != null) indexer.interrupt();
+        vectors.close();
+    }
+}
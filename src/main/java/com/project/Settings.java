@@ -0,0 +1,127 @@
+package com.project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Tunables read from -Dxavigpt.* system properties, falling back to XAVIGPT_* environment
+// variables (xavigpt.cache.ttl → XAVIGPT_CACHE_TTL), then to the default.
+public final class Settings {
+
+    private Settings() {}
+
+    // --- Server ---
+
+    // Ollama base URL; point it at FakeOllamaServer to test without a GPU
+    public static String ollamaUrl()          { return get("xavigpt.ollama.url", "http://localhost:11434"); }
+
+    // Several hosts, comma-separated; requests are spread across them by EndpointPool
+    public static List<String> ollamaUrls() {
+        List<String> urls = new ArrayList<>();
+        for (String u : get("xavigpt.ollama.urls", ollamaUrl()).split(",")) {
+            if (!u.isBlank()) urls.add(u.trim());
+        }
+        return urls;
+    }
+
+    // --- Scheduling ---
+
+    // Concurrent generations per model (match the server's OLLAMA_NUM_PARALLEL) and per host
+    public static int schedulerPerModel()     { return getInt("xavigpt.scheduler.per_model", 2); }
+    public static int schedulerPerBackend()   { return getInt("xavigpt.scheduler.per_backend", 4); }
+
+    // Models the Compare button sends a prompt to side by side, comma-separated
+    public static List<String> compareModels() {
+        List<String> models = new ArrayList<>();
+        for (String m : get("xavigpt.compare.models", "gemma3:1b,llava-phi3").split(",")) {
+            if (!m.isBlank()) models.add(m.trim());
+        }
+        return models;
+    }
+
+    // --- Context window ---
+
+    // Prompt tokens per request at most; also capped by the tuned num_ctx minus the reply
+    public static int contextBudget()         { return getInt("xavigpt.context.budget", 1536); }
+
+    // Fold turns that leave the window into a rolling summary (background TEXT_MODEL request)
+    public static boolean contextSummary()    { return getBoolean("xavigpt.context.summary", true); }
+
+    // --- Generation tuning ---
+
+    // Reply time GenerationTuner sizes num_predict for; per-option pins are read there
+    public static long tuneTargetMillis()     { return getLong("xavigpt.tune.target_ms", 20_000); }
+
+    // --- Search ---
+
+    // Embeds history for semantic search; needs `ollama pull nomic-embed-text` (or any embedding model).
+    // Off unless asked for: the indexer's embedding calls compete with chat on small hosts.
+    public static boolean searchEnabled()     { return getBoolean("xavigpt.search", false); }
+    public static String embedModel()         { return get("xavigpt.embed.model", "nomic-embed-text"); }
+
+    // --- Transcript ---
+
+    // Characters of message bodies a tab keeps on heap; older bodies go to data/transcript
+    public static int transcriptMemoryChars() { return getInt("xavigpt.transcript.memory_chars", 256 * 1024); }
+
+    // --- Documents ---
+
+    // Folders picked with the Docs button are chunked and embedded (with embedModel) for retrieval.
+    // Off unless asked for, like search.
+    public static boolean docsEnabled()       { return getBoolean("xavigpt.docs", false); }
+
+    // Chunks of ingested files put in front of a text prompt, and the cosine they need to get there
+    public static int docsTopK()              { return getInt("xavigpt.docs.top_k", 4); }
+    public static double docsMinScore()       { return getDouble("xavigpt.docs.min_score", 0.5); }
+
+    // --- Response cache ---
+
+    public static boolean cacheEnabled()      { return getBoolean("xavigpt.cache", false); }
+    public static long cacheMemoryBytes()     { return getLong("xavigpt.cache.memory", 16L << 20); }
+    public static long cacheDiskBytes()       { return getLong("xavigpt.cache.disk", 256L << 20); }
+    public static long cacheTtlSeconds()      { return getLong("xavigpt.cache.ttl", 7 * 24 * 3600); }
+
+    // --- Images ---
+
+    // Longest edge sent to the vision model; llava-phi3's CLIP encoder works at 336 px. 0 sends originals.
+    public static int imageMaxEdge()          { return getInt("xavigpt.image.max_edge", 336); }
+
+    // Prepared images kept for reuse (downscaled bytes + Base64); spilling keeps evicted ones in data/images
+    public static long imageCacheMemoryBytes() { return getLong("xavigpt.image.cache.memory", 32L << 20); }
+    public static boolean imageCacheSpill()    { return getBoolean("xavigpt.image.cache.spill", false); }
+    public static long imageCacheDiskBytes()   { return getLong("xavigpt.image.cache.disk", 256L << 20); }
+
+    // Start loading the vision model as soon as an image is attached
+    public static boolean visionPrewarm()     { return getBoolean("xavigpt.image.prewarm", true); }
+
+    // --- Helpers ---
+
+    public static String get(String key, String def) {
+        String v = System.getProperty(key);
+        if (v == null) v = System.getenv(key.toUpperCase().replace('.', '_'));
+        return v == null || v.isBlank() ? def : v.trim();
+    }
+
+    public static long getLong(String key, long def) {
+        try {
+            return Long.parseLong(get(key, Long.toString(def)));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    public static double getDouble(String key, double def) {
+        try {
+            return Double.parseDouble(get(key, Double.toString(def)));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    public static int getInt(String key, int def) {
+        return (int) getLong(key, def);
+    }
+
+    public static boolean getBoolean(String key, boolean def) {
+        return Boolean.parseBoolean(get(key, Boolean.toString(def)));
+    }
+}
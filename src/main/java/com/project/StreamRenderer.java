@@ -0,0 +1,78 @@
+package com.project;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.function.Consumer;
+
+// Collects streamed tokens from the reader thread and hands them to the FX thread
+// at most once per pulse, so a fast model doesn't flood the FX queue with runLater calls.
+public class StreamRenderer {
+
+    private final Consumer<String> sink;    // FX thread: text received since the last frame
+    private final Runnable afterFrame;      // FX thread: runs once per frame that had new text
+
+    private final Object lock = new Object();
+    private final StringBuilder pending = new StringBuilder();
+    private volatile boolean dirty = false;
+    private volatile boolean finished = false;
+    private volatile boolean discarded = false;
+    private volatile Runnable onFinish;
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            drain();
+        }
+    };
+
+    public StreamRenderer(Consumer<String> sink, Runnable afterFrame) {
+        this.sink = sink;
+        this.afterFrame = afterFrame;
+        runOnFx(timer::start);
+    }
+
+    // Reader thread
+    public void push(String token) {
+        if (token.isEmpty() || finished) return;
+        synchronized (lock) {
+            pending.append(token);
+        }
+        dirty = true;
+    }
+
+    // Flushes whatever is pending on the next pulse, then stops and runs onDone on the FX thread
+    public void finish(Runnable onDone) {
+        onFinish = onDone;
+        finished = true;
+    }
+
+    // Stops without rendering the pending text (cancelled requests)
+    public void discard(Runnable onDone) {
+        discarded = true;
+        finish(onDone);
+    }
+
+    private void drain() {
+        if (dirty && !discarded) {
+            String text;
+            synchronized (lock) {
+                text = pending.toString();
+                pending.setLength(0);
+                dirty = false;
+            }
+            sink.accept(text);
+            afterFrame.run();
+        }
+        if (finished && (!dirty || discarded)) {
+            timer.stop();
+            Runnable done = onFinish;
+            if (done != null) done.run();
+        }
+    }
+
+    private static void runOnFx(Runnable r) {
+        if (Platform.isFxApplicationThread()) r.run();
+        else Platform.runLater(r);
+    }
+}
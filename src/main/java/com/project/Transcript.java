@@ -0,0 +1,83 @@
+package com.project;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.io.IOException;
+
+// Keeps a tab's rows bounded on heap. Only the newest bodies, up to memoryChars characters, stay
+// in memory (the newest row always: it may be streaming); older ones are moved to a TranscriptLog
+// and read back when their cell scrolls into view. A spilled row is its role, length and log
+// offset, so what stays on heap no longer grows with the text of the chat. FX thread only.
+final class Transcript implements AutoCloseable {
+
+    private final ObservableList<ChatMessage> messages;
+    private final int memoryChars;
+    private TranscriptLog log;          // opened on the first spill
+    private boolean logFailed = false;  // then everything just stays in memory
+
+    Transcript(ObservableList<ChatMessage> messages, int memoryChars) {
+        this.messages = messages;
+        this.memoryChars = memoryChars;
+        messages.addListener((ListChangeListener<ChatMessage>) c -> {
+            boolean prepended = false;
+            boolean added = false;
+            while (c.next()) {
+                if (!c.wasAdded()) continue;
+                added = true;
+                if (c.getTo() < messages.size()) prepended = true;
+            }
+            if (added) trim(prepended);
+        });
+    }
+
+    // Resident rows are a suffix of the list, so after an append the walk ends at the first
+    // spilled row; a page of history inserted at the top needs the whole list walked once.
+    private void trim(boolean full) {
+        if (logFailed) return;
+        long chars = 0;
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            ChatMessage m = messages.get(i);
+            if (m.isSpilled()) {
+                if (full) continue;
+                return;
+            }
+            chars += m.getLength();
+            if (chars > memoryChars && i < messages.size() - 1 && !spill(m)) return;
+        }
+    }
+
+    private boolean spill(ChatMessage m) {
+        try {
+            if (log == null) log = TranscriptLog.create();
+            m.spill(log);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Transcript log unavailable, keeping messages in memory: " + e.getMessage());
+            logFailed = true;
+            return false;
+        }
+    }
+
+    public String stats() {
+        long resident = 0;
+        int spilled = 0;
+        for (ChatMessage m : messages) {
+            if (m.isSpilled()) spilled++;
+            else resident += m.getLength();
+        }
+        return String.format("transcript: %d rows, %d on heap (%d K chars), %d in log (%d KB)",
+            messages.size(), messages.size() - spilled, resident / 1024, spilled, log == null ? 0 : log.size() / 1024);
+    }
+
+    // After the rows were cleared: the log only held their bodies
+    public void reset() {
+        close();
+        log = null;
+    }
+
+    @Override
+    public void close() {
+        if (log != null) log.close();
+    }
+}
@@ -0,0 +1,118 @@
+package com.project;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Append-only log of message bodies that left a tab's in-memory window. The file is mapped in
+// fixed segments, so appends and reads are memory copies into the page cache (no read/write
+// calls, nothing on heap but the segment list). A body may span segments. The log is a cache
+// of what the tab shows, not history (that is ChatStore): one file per tab, deleted on close.
+// Each file is locked while its tab is open, so leftovers of a crash (unlocked files) can be deleted
+// at startup without touching the logs of another instance running from the same directory.
+// FX thread only.
+final class TranscriptLog implements AutoCloseable {
+
+    static final Path DIR = Path.of("data/transcript");
+    private static final int SEGMENT = 8 << 20;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final FileLock lock;              // held for the life of the log; released on close
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long end = 0;
+
+    private TranscriptLog(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.lock = channel.lock();
+    }
+
+    static TranscriptLog create() throws IOException {
+        Files.createDirectories(DIR);
+        return new TranscriptLog(Files.createTempFile(DIR, "tab-" + ProcessHandle.current().pid() + "-", ".log"));
+    }
+
+    // Startup: a log nobody holds the lock on belongs to a run that is gone
+    static void deleteStale() {
+        if (!Files.isDirectory(DIR)) return;
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(DIR, "*.log")) {
+            for (Path f : dir) {
+                if (orphaned(f)) Files.deleteIfExists(f);
+            }
+        } catch (IOException e) {
+            System.out.println("Could not clean " + DIR + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean orphaned(Path f) {
+        try (FileChannel ch = FileChannel.open(f, StandardOpenOption.WRITE)) {
+            return ch.tryLock() != null;   // released when ch closes
+        } catch (OverlappingFileLockException e) {
+            return false;                  // one of this process's own tabs
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    long size() { return end; }
+
+    // Returns the offset the bytes were written at
+    long append(byte[] data) throws IOException {
+        long offset = end;
+        int done = 0;
+        while (done < data.length) {
+            long pos = offset + done;
+            MappedByteBuffer seg = segment((int) (pos / SEGMENT));
+            int at = (int) (pos % SEGMENT);
+            int n = Math.min(data.length - done, SEGMENT - at);
+            seg.put(at, data, done, n);
+            done += n;
+        }
+        end += data.length;
+        return offset;
+    }
+
+    byte[] read(long offset, int length) throws IOException {
+        if (offset < 0 || offset + length > end) throw new IOException("no record at " + offset + " in " + path);
+        byte[] out = new byte[length];
+        int done = 0;
+        while (done < length) {
+            long pos = offset + done;
+            MappedByteBuffer seg = segments.get((int) (pos / SEGMENT));
+            int at = (int) (pos % SEGMENT);
+            int n = Math.min(length - done, SEGMENT - at);
+            seg.get(at, out, done, n);
+            done += n;
+        }
+        return out;
+    }
+
+    // Mapping read-write past the end grows the file a segment at a time
+    private MappedByteBuffer segment(int index) throws IOException {
+        while (segments.size() <= index) {
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * SEGMENT, SEGMENT));
+        }
+        return segments.get(index);
+    }
+
+    // The mappings go away with the last reference to them; on Linux the file can be removed
+    // while mapped, elsewhere deleteStale gets it next start
+    @Override
+    public void close() {
+        segments.clear();
+        end = 0;
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException ignore) {}
+    }
+}
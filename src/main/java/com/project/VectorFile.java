@@ -0,0 +1,308 @@
+package com.project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+// Append-only file of unit vectors for similarity search: a 16-byte header (magic, dimension,
+// model hash), then fixed-size little-endian records [id, group, float[dim]]. Ids only grow.
+// The file is memory-mapped for reading, so vectors never sit on the heap; a scan runs slices
+// in parallel on the common pool, each keeping its own top k. One writer thread; any number
+// of readers.
+public class VectorFile implements AutoCloseable {
+
+    // Records superseded since they were written (e.g. chunks of a file that changed)
+    public interface Live {
+        boolean test(long id, long group);
+    }
+
+    private record Mapped(ByteBuffer buf, int count, int dim) {
+        int recordSize() { return 16 + dim * 4; }
+    }
+
+    private static final int MAGIC = 0x58564543;     // "XVEC"
+    private static final int HEADER = 16;
+    private static final int SLICE = 4096;            // records per parallel task
+
+    private final Path file;
+    private final int modelHash;
+    private FileChannel channel;
+    private volatile Mapped mapped;
+
+    // A file written for another model (or another format) is started over
+    public VectorFile(Path file, String model) throws IOException {
+        this.file = file;
+        this.modelHash = model.hashCode();
+        file.toAbsolutePath().getParent().toFile().mkdirs();
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapped = openExisting();
+    }
+
+    public int size() {
+        return mapped.count();
+    }
+
+    public int dim() {
+        return mapped.dim();
+    }
+
+    // Id of the newest record, or -1 when empty
+    public long lastId() {
+        Mapped m = mapped;
+        return m.count() == 0 ? -1 : m.buf().getLong(HEADER + (m.count() - 1) * m.recordSize());
+    }
+
+    // --- Search ---
+
+    // {ids, groups, score bits} of the k best live records for a unit-length query, best first.
+    // Stored vectors are unit length too, so the dot product is the cosine. live is only asked
+    // about records that would make the cut.
+    public long[][] topK(float[] query, int k, Live live) {
+        Mapped m = mapped;
+        if (m.count() == 0 || query.length != m.dim()) return new long[3][0];
+        int slices = (m.count() + SLICE - 1) / SLICE;
+        TopK best = IntStream.range(0, slices).parallel()
+            .mapToObj(s -> scan(m, query, s * SLICE, Math.min(m.count(), (s + 1) * SLICE), k, live))
+            .reduce(TopK::merge)   // each slice's heap is merged once, so merging in place is safe
+            .orElseThrow();
+        return best.sorted();
+    }
+
+    private static TopK scan(Mapped m, float[] q, int from, int to, int k, Live live) {
+        ByteBuffer buf = m.buf();
+        FloatBuffer floats = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        int rec = m.recordSize();
+        int dim = q.length, unrolled = dim & ~3;
+        float[] v = new float[dim];
+        TopK top = new TopK(k);
+        for (int i = from; i < to; i++) {
+            int base = HEADER + i * rec;
+            floats.get((base + 16) / 4, v);   // bulk copy beats per-float ByteBuffer reads
+            // Four independent sums: one running sum is bound by float add latency
+            float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            int j = 0;
+            for (; j < unrolled; j += 4) {
+                s0 += q[j] * v[j];
+                s1 += q[j + 1] * v[j + 1];
+                s2 += q[j + 2] * v[j + 2];
+                s3 += q[j + 3] * v[j + 3];
+            }
+            for (; j < dim; j++) s0 += q[j] * v[j];
+            float score = (s0 + s1) + (s2 + s3);
+            if (!top.accepts(score)) continue;
+            long id = buf.getLong(base), group = buf.getLong(base + 8);
+            if (live == null || live.test(id, group)) top.offer(id, group, score);
+        }
+        return top;
+    }
+
+    // Fixed-size min-heap on score: the weakest of the current top k sits at the root
+    private static final class TopK {
+        final long[] ids, groups;
+        final float[] scores;
+        int size = 0;
+
+        TopK(int k) {
+            ids = new long[k];
+            groups = new long[k];
+            scores = new float[k];
+        }
+
+        boolean accepts(float score) {
+            return size < ids.length || (size > 0 && score > scores[0]);
+        }
+
+        void offer(long id, long group, float score) {
+            if (size < ids.length) {
+                set(size, id, group, score);
+                siftUp(size++);
+            } else if (size > 0 && score > scores[0]) {
+                set(0, id, group, score);
+                siftDown(0);
+            }
+        }
+
+        TopK merge(TopK other) {
+            for (int i = 0; i < other.size; i++) offer(other.ids[i], other.groups[i], other.scores[i]);
+            return this;
+        }
+
+        long[][] sorted() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+            Arrays.sort(order, Comparator.comparingDouble(i -> -scores[i]));
+            long[][] out = new long[3][size];
+            for (int i = 0; i < size; i++) {
+                out[0][i] = ids[order[i]];
+                out[1][i] = groups[order[i]];
+                out[2][i] = Float.floatToIntBits(scores[order[i]]);
+            }
+            return out;
+        }
+
+        private void set(int i, long id, long group, float score) {
+            ids[i] = id;
+            groups[i] = group;
+            scores[i] = score;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (scores[parent] <= scores[i]) return;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int l = 2 * i + 1, r = l + 1, min = i;
+                if (l < size && scores[l] < scores[min]) min = l;
+                if (r < size && scores[r] < scores[min]) min = r;
+                if (min == i) return;
+                swap(i, min);
+                i = min;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long id = ids[a]; ids[a] = ids[b]; ids[b] = id;
+            long g = groups[a]; groups[a] = groups[b]; groups[b] = g;
+            float s = scores[a]; scores[a] = scores[b]; scores[b] = s;
+        }
+    }
+
+    // Score bits from topK back to a float
+    public static float score(long bits) {
+        return Float.intBitsToFloat((int) bits);
+    }
+
+    // --- Writes (one thread) ---
+
+    // False when the file held vectors of another size (the model changed its output): they are
+    // dropped and nothing is written, and the caller has to embed everything again from the start
+    public boolean append(long[] ids, long[] groups, float[][] vectors) throws IOException {
+        Mapped m = mapped;
+        int dim = vectors[0].length;
+        if (m.dim() != dim) {
+            boolean started = m.count() == 0;
+            // A new file swapped in, as in compact: readers may still be scanning the old mapping,
+            // and touching a truncated mapping kills the process
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                out.write(header(dim));
+            }
+            swapIn(tmp);
+            m = new Mapped(null, 0, dim);
+            if (!started) {
+                System.out.println("Rebuilding " + file + " (embedding size changed to " + dim + ")");
+                mapped = map(0, dim);
+                return false;
+            }
+        }
+        int rec = m.recordSize();
+        if ((long) HEADER + (long) (m.count() + ids.length) * rec > Integer.MAX_VALUE) {
+            throw new IOException("vector file full (2 GB)");
+        }
+        ByteBuffer out = ByteBuffer.allocate(ids.length * rec).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < ids.length; i++) {
+            out.putLong(ids[i]).putLong(groups[i]);
+            for (float x : vectors[i]) out.putFloat(x);
+        }
+        out.flip();
+        long at = HEADER + (long) m.count() * rec;
+        while (out.hasRemaining()) at += channel.write(out, at);
+        mapped = map(m.count() + ids.length, dim);
+        return true;
+    }
+
+    // Rewrites the file without dead records when they are the majority; returns how many went
+    public int compact(Live live) throws IOException {
+        Mapped m = mapped;
+        int rec = m.recordSize();
+        int alive = 0;
+        for (int i = 0; i < m.count(); i++) {
+            int base = HEADER + i * rec;
+            if (live.test(m.buf().getLong(base), m.buf().getLong(base + 8))) alive++;
+        }
+        if (m.count() == 0 || alive * 2 > m.count()) return 0;
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(header(m.dim()));
+            for (int i = 0; i < m.count(); i++) {
+                int base = HEADER + i * rec;
+                if (!live.test(m.buf().getLong(base), m.buf().getLong(base + 8))) continue;
+                ByteBuffer record = m.buf().duplicate().position(base).limit(base + rec);
+                while (record.hasRemaining()) out.write(record);
+            }
+        }
+        swapIn(tmp);
+        mapped = map(alive, m.dim());
+        return m.count() - alive;
+    }
+
+    // --- Internals ---
+
+    // The old file stays reachable through mappings readers still hold until they let go of them
+    private void swapIn(Path tmp) throws IOException {
+        channel.close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private ByteBuffer header(int dim) {
+        return ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN)
+            .putInt(MAGIC).putInt(dim).putInt(modelHash).putInt(0).flip();
+    }
+
+    private Mapped openExisting() throws IOException {
+        long size = channel.size();
+        if (size < HEADER) return new Mapped(null, 0, 0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(header, 0);
+        header.flip();
+        int magic = header.getInt(), dim = header.getInt(), hash = header.getInt();
+        if (magic != MAGIC || dim <= 0 || hash != modelHash) {
+            System.out.println("Rebuilding " + file + " (format or embedding model changed)");
+            channel.truncate(0);
+            return new Mapped(null, 0, 0);
+        }
+        int rec = 16 + dim * 4;
+        int count = (int) ((size - HEADER) / rec);
+        channel.truncate(HEADER + (long) count * rec);   // drop a record torn by a crash
+        return map(count, dim);
+    }
+
+    private Mapped map(int count, int dim) throws IOException {
+        long bytes = HEADER + (long) count * (16 + dim * 4);
+        ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes).order(ByteOrder.LITTLE_ENDIAN);
+        return new Mapped(buf, count, dim);
+    }
+
+    static float[] normalize(float[] v) {
+        double sum = 0;
+        for (float x : v) sum += x * x;
+        if (sum == 0) return v;
+        float inv = (float) (1 / Math.sqrt(sum));
+        for (int i = 0; i < v.length; i++) v[i] *= inv;
+        return v;
+    }
+
+    @Override
+    public void close() {
+        try { channel.close(); } catch (IOException ignore) {}
+    }
+}
@@ -0,0 +1,60 @@
+package com.project;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class NdjsonStreamParserTest {
+
+    // One chat chunk whose content is the given raw bytes, unescaped
+    private static String content(int... raw) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        line.writeBytes("{\"message\":{\"role\":\"assistant\",\"content\":\"".getBytes(StandardCharsets.US_ASCII));
+        for (int b : raw) line.write(b);
+        line.writeBytes("\"},\"done\":false}\n".getBytes(StandardCharsets.US_ASCII));
+        NdjsonStreamParser parser = new NdjsonStreamParser(new ByteArrayInputStream(line.toByteArray()));
+        NdjsonStreamParser.Chunk chunk = new NdjsonStreamParser.Chunk();
+        assertTrue(parser.next(chunk));
+        return chunk.content;
+    }
+
+    @Test
+    void decodesValidSequences() throws IOException {
+        assertEquals("é", content(0xC3, 0xA9));
+        assertEquals("€", content(0xE2, 0x82, 0xAC));
+        assertEquals("😀", content(0xF0, 0x9F, 0x98, 0x80));
+        assertEquals(new String(Character.toChars(0x10FFFF)), content(0xF4, 0x8F, 0xBF, 0xBF));
+    }
+
+    @Test
+    void replacesCodePointsPastUnicode() throws IOException {
+        assertEquals("�", content(0xF4, 0x90, 0x80, 0x80));   // U+110000
+        assertEquals("�", content(0xF5, 0x80, 0x80, 0x80));
+        assertEquals("�", content(0xF7, 0xBF, 0xBF, 0xBF));
+    }
+
+    @Test
+    void replacesOverlongForms() throws IOException {
+        assertEquals("�", content(0xC0, 0xAF));               // '/' in two bytes
+        assertEquals("�", content(0xE0, 0x80, 0xAF));
+        assertEquals("�", content(0xF0, 0x8F, 0xBF, 0xBF));   // U+FFFF in four bytes
+    }
+
+    @Test
+    void replacesSurrogates() throws IOException {
+        assertEquals("�", content(0xED, 0xA0, 0x80));         // U+D800
+        assertEquals("�", content(0xED, 0xBF, 0xBF));         // U+DFFF
+    }
+
+    @Test
+    void resyncsAfterAMalformedSequence() throws IOException {
+        assertEquals("�a", content(0xF8, 'a'));
+        assertEquals("�a", content(0xC3, 'a'));
+    }
+}